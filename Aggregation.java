@@ -0,0 +1,224 @@
+// Aggregation		Author: Garrett Reihner
+//
+// Summarizes the index values of the readings that match a set of filters,
+// grouped by any mix of parameter, site, year and description. For every
+// group it keeps the count, lowest, highest and sum of the index values,
+// and a histogram of them that the percentiles are read from. Everything is
+// kept in primitive arrays indexed by group and filled in one pass over the
+// rows the BitmapIndex finds for the description, site and year (only
+// those on the days wanted, found with the DateIndex, when there is a days
+// filter), so nothing is boxed no matter how many readings there are and
+// rows that do not match are never looked at. The pass stops with a CancellationException if its thread is interrupted,
+// which is how the window drops a query that a newer one has replaced.
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+public class Aggregation {
+	// the columns that can be grouped by. add them together to group by
+	// more than one, for example PARAMETER + SITE
+	public static final int PARAMETER = 1;
+	public static final int SITE = 2;
+	public static final int YEAR = 4;
+	public static final int DESCRIPTION = 8;
+
+	// pass ALL in place of a code or year to leave that filter off
+	public static final int ALL = Integer.MIN_VALUE;
+
+	// most buckets in each group's histogram, and the most buckets for all
+	// of the groups together. with many groups each one gets fewer, wider
+	// buckets so the histograms still fit in memory
+	private static final int MAX_BUCKETS = 256;
+	private static final long HISTOGRAM_BUDGET = 1 << 24;
+	// rows between checks for an interrupt
+	private static final int CHECK_INTERVAL = 1 << 16;
+
+	private final int groupBy;
+	private final int minYear;
+	// number of slots on each axis, which is 1 for an axis not grouped by
+	private final int numParameters;
+	private final int numSites;
+	private final int numYears;
+	private final int numDescriptions;
+	private final int numGroups;
+
+	private final long[] counts;
+	private final long[] sums;
+	private final int[] mins;
+	private final int[] maxs;
+
+	// histograms[group * numBuckets + bucket] counts the readings of a
+	// group with an index value from bucket * bucketWidth up to the start
+	// of the next bucket
+	private final int[] histograms;
+	private final int numBuckets;
+	private final int bucketWidth;
+
+	// aggregates the readings of the store that match the filters, using
+	// the bitmap index of the same store to find them. minYear and maxYear
+	// are the bounds of the years in the store and maxIndexValue is its
+	// highest index value (or anything higher), which the histogram
+	// buckets have to cover
+	public Aggregation(ReadingStore store, BitmapIndex index, int minYear,
+			int maxYear, int maxIndexValue, int groupBy, int descriptionCode,
+			int siteCode, int year) {
+		this(store, index, null, minYear, maxYear, maxIndexValue, groupBy,
+				descriptionCode, siteCode, year, null);
+	}
+
+	// the same, only counting readings on the given days, which are found
+	// with the date index of the store. null leaves the days filter off,
+	// and then the date index is not used and can be null
+	public Aggregation(ReadingStore store, BitmapIndex index,
+			DateIndex dateIndex, int minYear, int maxYear, int maxIndexValue,
+			int groupBy, int descriptionCode, int siteCode, int year,
+			DateRange dates) {
+		this.groupBy = groupBy;
+		this.minYear = minYear;
+		numParameters = (groupBy & PARAMETER) != 0
+				? store.getParameters().size() : 1;
+		numSites = (groupBy & SITE) != 0 ? store.getSites().size() : 1;
+		numYears = (groupBy & YEAR) != 0 ? Math.max(0, maxYear - minYear + 1)
+				: 1;
+		numDescriptions = (groupBy & DESCRIPTION) != 0
+				? store.getDescriptions().size() : 1;
+		numGroups = numParameters * numSites * numYears * numDescriptions;
+
+		counts = new long[numGroups];
+		sums = new long[numGroups];
+		mins = new int[numGroups];
+		maxs = new int[numGroups];
+		Arrays.fill(mins, Integer.MAX_VALUE);
+		Arrays.fill(maxs, Integer.MIN_VALUE);
+
+		int highest = Math.max(0, maxIndexValue);
+		int buckets = (int) Math.max(1, Math.min(MAX_BUCKETS,
+				HISTOGRAM_BUDGET / Math.max(1, numGroups)));
+		bucketWidth = highest / buckets + 1;
+		numBuckets = highest / bucketWidth + 1;
+		histograms = new int[numGroups * numBuckets];
+
+		long[] matching = index.matching(descriptionCode, siteCode, year);
+		if (dates == null) {
+			for (int word = 0; word < matching.length; word++) {
+				checkInterrupt(word << 6);
+				// visits the set bits from lowest to highest
+				for (long bits = matching[word]; bits != 0; bits &= bits - 1) {
+					add(store, (word << 6) | Long.numberOfTrailingZeros(bits));
+				}
+			}
+			return;
+		}
+		// only the rows of each window of days, which sit next to each
+		// other in date order, are looked up in the bitset
+		for (int w = 0; w < dates.size(); w++) {
+			int end = dateIndex.position(dates.getTo(w) + 1L);
+			for (int i = dateIndex.position(dates.getFrom(w)); i < end; i++) {
+				checkInterrupt(i);
+				int row = dateIndex.row(i);
+				if ((matching[row >>> 6] & (1L << row)) != 0) {
+					add(store, row);
+				}
+			}
+		}
+	}
+
+	private static void checkInterrupt(int row) {
+		if (row % CHECK_INTERVAL == 0
+				&& Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("aggregation interrupted");
+		}
+	}
+
+	// adds one matching row to its group
+	private void add(ReadingStore store, int row) {
+		int group = group(store, row);
+		int value = store.getIndexValue(row);
+		counts[group]++;
+		sums[group] += value;
+		mins[group] = Math.min(mins[group], value);
+		maxs[group] = Math.max(maxs[group], value);
+		histograms[group * numBuckets + Math.max(0, value) / bucketWidth]++;
+	}
+
+	// the group a row belongs to. an axis that is not grouped by always
+	// has slot 0
+	private int group(ReadingStore store, int row) {
+		int description = (groupBy & DESCRIPTION) == 0 ? 0
+				: store.getDescriptionCode(row);
+		int year = (groupBy & YEAR) == 0 ? 0 : store.getYear(row) - minYear;
+		int site = (groupBy & SITE) == 0 ? 0 : store.getSiteCode(row);
+		int parameter = (groupBy & PARAMETER) == 0 ? 0
+				: store.getParameterCode(row);
+		return ((description * numYears + year) * numSites + site)
+				* numParameters + parameter;
+	}
+
+	public int getNumGroups() {
+		return numGroups;
+	}
+
+	// the following give the value of each grouped column for a group, or
+	// ALL if the aggregation is not grouped by that column
+	public int getParameterCode(int group) {
+		return (groupBy & PARAMETER) == 0 ? ALL : group % numParameters;
+	}
+
+	public int getSiteCode(int group) {
+		return (groupBy & SITE) == 0 ? ALL
+				: group / numParameters % numSites;
+	}
+
+	public int getYear(int group) {
+		return (groupBy & YEAR) == 0 ? ALL
+				: group / (numParameters * numSites) % numYears + minYear;
+	}
+
+	public int getDescriptionCode(int group) {
+		return (groupBy & DESCRIPTION) == 0 ? ALL
+				: group / (numParameters * numSites * numYears);
+	}
+
+	public long getCount(int group) {
+		return counts[group];
+	}
+
+	public long getSum(int group) {
+		return sums[group];
+	}
+
+	// the following are 0 for a group with no readings
+	public int getMin(int group) {
+		return counts[group] == 0 ? 0 : mins[group];
+	}
+
+	public int getMax(int group) {
+		return counts[group] == 0 ? 0 : maxs[group];
+	}
+
+	public double getMean(int group) {
+		return counts[group] == 0 ? 0 : sums[group] / (double) counts[group];
+	}
+
+	// the index value that the given fraction (such as 0.95) of the group's
+	// readings are at or below, read from its histogram. it is exact when
+	// the buckets are one value wide and otherwise off by less than a
+	// bucket width
+	public int getPercentile(int group, double fraction) {
+		long count = counts[group];
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		int start = group * numBuckets;
+		for (int bucket = 0; bucket < numBuckets; bucket++) {
+			seen += histograms[start + bucket];
+			if (seen >= rank) {
+				int value = bucket * bucketWidth + bucketWidth - 1;
+				return Math.max(mins[group], Math.min(maxs[group], value));
+			}
+		}
+		return maxs[group];
+	}
+}
@@ -0,0 +1,674 @@
+// AirDataLoader		Author: Garrett Reihner
+//
+// Reads an air quality data file in a single pass. The file is pulled through
+// a FileChannel in large blocks and split on tab and newline bytes by hand,
+// so the numeric fields (_id, index_value and the date) are
+// parsed straight from the bytes without building temporary Strings, and the
+// site, parameter and description are looked up in StringDictionary objects
+// straight from the bytes as well. The
+// readings go into a columnar ReadingStore, and the year bounds, unique
+// sites/parameters/descriptions and per-parameter counts are all collected
+// during that same pass. A gzip or zstd compressed file is read the same
+// way through a DecompressingChannel, which decompresses it on another
+// thread while the lines are parsed.
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class AirDataLoader {
+	// size of each block read from the channel. lines are never split across
+	// blocks since the unfinished tail is carried over to the next read
+	private static final int BLOCK_SIZE = 1 << 20;
+	// number of tab separated columns in every line of the data file
+	private static final int NUM_FIELDS = 8;
+	// least time between two reports to the progress listener
+	private static final long PROGRESS_INTERVAL = 100000000L;	// 100 ms
+
+	// receives partial results while a file is being loaded. it is called on
+	// the loading thread and is always handed copies of the counts
+	public interface ProgressListener {
+		void progress(int numReadings, long bytesRead, long totalBytes,
+				String[] parameters, int[] parameterCounts);
+	}
+
+	private ProgressListener listener;	// null when nobody is listening
+	private long lastProgress;			// System.nanoTime of the last report
+	private boolean fromSnapshot = false;	// true if no text was parsed
+	private boolean compressed = false;	// true if the file was compressed
+	// offset just past the last line that has been loaded, which is where
+	// reading starts again when lines are appended to the file
+	private long endOffset = 0;
+
+	private ReadingStore store = new ReadingStore();
+	// counts of the readings by site, parameter and year when only the
+	// statistics are wanted, in which case the store stays empty. null
+	// when the readings are kept
+	private ReadingStatistics statistics = null;
+
+	// minYear cannot start at 0 since it would always be lower than any year
+	private int minYear = 10000;
+	private int maxYear = 0;
+
+	// unique sites and parameters in the order they are first seen. the
+	// parameter dictionary also counts the readings of each parameter
+	private StringDictionary sites = new StringDictionary();
+	private StringDictionary parameters = new StringDictionary();
+	// descriptions exactly as written in the file, and after the different
+	// kinds of "Unhealthy" have been merged by ReadingGDR.normalizeDescription
+	private StringDictionary rawDescriptions = new StringDictionary();
+	private StringDictionary descriptions = new StringDictionary();
+	// normalized description code for each raw description code
+	private int[] descriptionOf = new int[16];
+
+	// start and end offsets of each field in the line currently being parsed
+	private final int[] fieldStart = new int[NUM_FIELDS];
+	private final int[] fieldEnd = new int[NUM_FIELDS];
+	// year of the date most recently handled by parseDate
+	private int parsedYear;
+	// true to leave a last line without a newline unparsed (see
+	// setWholeLinesOnly)
+	private boolean wholeLinesOnly = false;
+	// true to report and skip bad lines rather than fail, for readAppended
+	private boolean skipBadLines = false;
+
+	// sets the listener that is told about the readings loaded so far. it is
+	// called after the first block and then at most every 100 ms
+	public void setProgressListener(ProgressListener progressListener) {
+		listener = progressListener;
+	}
+
+	// when set, the loads that follow only count the readings into
+	// getStatistics (along with the year bounds and the sites, parameters
+	// and descriptions) instead of keeping them in the store, so the memory
+	// used does not grow with the size of the file
+	public void setStatisticsOnly(boolean statisticsOnly) {
+		statistics = statisticsOnly ? new ReadingStatistics() : null;
+	}
+
+	// when set, a last line without a newline is left out of the loads that
+	// follow and the end offset stays at the last newline, since the line
+	// may still be being written. used for a file that will be followed, so
+	// readAppended reads the line once it has been finished instead of
+	// starting in the middle of it
+	public void setWholeLinesOnly(boolean wholeLinesOnly) {
+		this.wholeLinesOnly = wholeLinesOnly;
+	}
+
+	// gives the names codes in the given order before anything is loaded,
+	// so the codes of the readings added later match that order whichever
+	// part of the data arrives first (see PartitionedDataset)
+	public void addNames(String[] siteNames, String[] parameterNames,
+			String[] descriptionNames) {
+		for (String name : siteNames) {
+			sites.add(name, 0);
+		}
+		for (String name : parameterNames) {
+			parameters.add(name, 0);
+		}
+		for (String name : descriptionNames) {
+			descriptions.add(name, 0);
+		}
+	}
+
+	// reads the whole file named by filename, skipping the header line. a
+	// gzip or zstd compressed file is decompressed as it is parsed
+	public void load(String filename) throws IOException {
+		LoadPhaseEvent phase = DashboardStats.beginPhase("parse");
+		Path path = Paths.get(filename);
+		compressed = DecompressingChannel.isCompressed(path);
+		lastProgress = System.nanoTime() - PROGRESS_INTERVAL;
+		if (compressed) {
+			// the length of the text is not known until it has all been
+			// read. the end offset is the size of the compressed file, so
+			// it is not mistaken for lines appended to it
+			try (DecompressingChannel channel = DecompressingChannel.open(path)) {
+				parse(channel, 0, Long.MAX_VALUE, true, true);
+			}
+			endOffset = Files.size(path);
+		} else {
+			try (FileChannel channel = FileChannel.open(path,
+					StandardOpenOption.READ)) {
+				endOffset = parse(channel, 0, channel.size(), true, 
+						!wholeLinesOnly);
+			}
+		}
+		DashboardStats.endPhase(phase, readingsLoaded(), endOffset);
+	}
+
+	// parses the lines between the byte offsets start and end of the file.
+	// start has to be the beginning of a line, and end either the end of the
+	// file or just past a newline. reads from a FileChannel give their own
+	// position, so several loaders can parse different ranges of one
+	// channel at once. any other channel is read from start to its end in
+	// order, with end as Long.MAX_VALUE if its length is not known. a
+	// last line without a newline is only parsed if lastLine is true, since
+	// it may still be in the middle of being written. returns the offset
+	// just past the last line that was parsed
+	private long parse(ReadableByteChannel channel, long start, long end,
+			boolean header, boolean lastLine) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+		long position = start;	// offset of the next byte to read
+
+		while (true) {
+			// fill the buffer after any carried bytes, without going past end
+			if (position < end) {
+				buffer.limit((int) Math.min(buffer.capacity(),
+						buffer.position() + (end - position)));
+				int read = channel instanceof FileChannel
+						? ((FileChannel) channel).read(buffer, position)
+						: channel.read(buffer);
+				// the file got shorter while it was being read
+				if (read == -1) {
+					end = position;
+				} else {
+					position += read;
+				}
+				buffer.limit(buffer.capacity());
+			}
+
+			byte[] bytes = buffer.array();
+			int limit = buffer.position();
+			int lineStart = 0;
+
+			// hand every complete line in the block to parseLine
+			for (int i = 0; i < limit; i++) {
+				if (bytes[i] == '\n') {
+					if (header) {
+						header = false;
+					} else {
+						parseLine(bytes, lineStart, i,
+								position - limit + lineStart);
+					}
+					lineStart = i + 1;
+				}
+			}
+
+			// nothing more to read, so any carried tail is the last line
+			// of a file that does not end with a newline
+			if (position >= end) {
+				if (!lastLine) {
+					return end - (limit - lineStart);
+				}
+				if (!header && lineStart < limit) {
+					parseLine(bytes, lineStart, limit,
+							position - limit + lineStart);
+				}
+				return end;
+			}
+
+			// a single line longer than the block needs a bigger buffer
+			if (lineStart == 0 && limit == bytes.length) {
+				ByteBuffer bigger = ByteBuffer.allocate(bytes.length * 2);
+				bigger.put(bytes, 0, limit);
+				buffer = bigger;
+				continue;
+			}
+
+			// move the unfinished line to the front of the buffer
+			System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+			buffer.position(limit - lineStart);
+
+			if (listener != null && System.nanoTime() - lastProgress 
+					>= PROGRESS_INTERVAL) {
+				if (channel instanceof DecompressingChannel) {
+					// progress through the compressed file, since the
+					// length of the text is not known
+					DecompressingChannel decompressing =
+							(DecompressingChannel) channel;
+					reportProgress(decompressing.getCompressedRead(),
+							decompressing.getCompressedSize());
+				} else {
+					reportProgress(position - buffer.position(),
+							((FileChannel) channel).size());
+				}
+			}
+		}
+	}
+
+	private void reportProgress(long bytesRead, long totalBytes) {
+		lastProgress = System.nanoTime();
+		listener.progress(store.size(), bytesRead, totalBytes,
+				getParameters(), getParameterCounts());
+	}
+
+	// reads the whole file like load, but splits it into byte ranges that
+	// end on newlines and parses them at the same time on a ForkJoinPool
+	// with the given number of workers. each range is parsed by its own
+	// loader into its own store and dictionaries, and these are merged in
+	// file order, so the result (including the order of the sites and
+	// parameters) is exactly the same as load gives. a compressed file
+	// cannot be split into ranges, so it is read by load
+	public void loadParallel(String filename, int parallelism)
+			throws IOException {
+		if (parallelism <= 1
+				|| DecompressingChannel.isCompressed(Paths.get(filename))) {
+			load(filename);
+			return;
+		}
+		// the merges happen while the parts are parsed, so they are timed
+		// as phases of their own inside this one
+		LoadPhaseEvent phase = DashboardStats.beginPhase("parse");
+		try (FileChannel channel = FileChannel.open(Paths.get(filename),
+				StandardOpenOption.READ)) {
+			lastProgress = System.nanoTime() - PROGRESS_INTERVAL;
+			long size = channel.size();
+			long dataStart = nextLineStart(channel, 0);	// skip the header
+
+			// a few ranges per worker so an uneven range does not leave the
+			// other workers idle at the end
+			int numChunks = (int) Math.max(1, Math.min(parallelism * 4L,
+					(size - dataStart) / BLOCK_SIZE + 1));
+			long[] bounds = new long[numChunks + 1];
+			bounds[0] = dataStart;
+			for (int i = 1; i < numChunks; i++) {
+				long target = dataStart + (size - dataStart) * i / numChunks;
+				bounds[i] = Math.max(bounds[i - 1],
+						nextLineStart(channel, target - 1));
+			}
+			bounds[numChunks] = size;
+
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				ArrayList<ForkJoinTask<AirDataLoader>> chunks =
+						new ArrayList<ForkJoinTask<AirDataLoader>>();
+				for (int i = 0; i < numChunks; i++) {
+					long chunkStart = bounds[i];
+					long chunkEnd = bounds[i + 1];
+					chunks.add(pool.submit(() -> {
+						AirDataLoader part = new AirDataLoader();
+						part.setStatisticsOnly(statistics != null);
+						// only the last range can end without a newline
+						part.endOffset = part.parse(channel, chunkStart, 
+								chunkEnd, false, !wholeLinesOnly);
+						return part;
+					}));
+				}
+				// merge in file order while the later ranges are still
+				// being parsed
+				for (int i = 0; i < numChunks; i++) {
+					AirDataLoader part = chunks.get(i).join();
+					merge(part);
+					endOffset = part.endOffset;
+					chunks.set(i, null);	// let the merged part be freed
+					if (listener != null && System.nanoTime() - lastProgress 
+							>= PROGRESS_INTERVAL) {
+						reportProgress(bounds[i + 1], size);
+					}
+				}
+			} catch (RuntimeException e) {
+				// a worker that failed to read its range rethrows it here
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw e;
+			} finally {
+				pool.shutdown();
+			}
+		}
+		DashboardStats.endPhase(phase, readingsLoaded(), endOffset);
+	}
+
+	// parses the complete lines that have been appended to the file since
+	// the given offset (the end offset of an earlier load) into a new
+	// loader, which can be added to the one that loaded the rest of the file
+	// with append. it does not change this loader, so it can run on another
+	// thread. bad lines are reported and skipped, so the loader may hold no
+	// readings but still move the end offset past them. returns null if no
+	// complete line has been added
+	public static AirDataLoader readAppended(String filename, long offset)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filename),
+				StandardOpenOption.READ)) {
+			if (channel.size() <= offset) {
+				return null;
+			}
+			LoadPhaseEvent phase = DashboardStats.beginPhase("read appended");
+			AirDataLoader part = new AirDataLoader();
+			part.skipBadLines = true;
+			part.endOffset = part.parse(channel, offset, channel.size(), 
+					false, false);
+			DashboardStats.endPhase(phase, part.store.size(), 
+					part.endOffset - offset);
+			if (part.endOffset == offset) {
+				return null;
+			}
+			return part;
+		}
+	}
+
+	// adds the readings that readAppended found to the end of this loader
+	// and moves its end offset past them. returns the row number of the
+	// first added reading in the store
+	public int append(AirDataLoader part) {
+		int firstRow = store.size();
+		merge(part);
+		endOffset = part.endOffset;
+		return firstRow;
+	}
+
+	// offset of the first line that starts after the given offset, or the
+	// end of the file if there is no newline after it
+	private static long nextLineStart(FileChannel channel, long offset)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		long position = Math.max(0, offset);
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read == -1) {
+				return channel.size();
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+	}
+
+	// adds the readings of a loader that parsed a later part of the file.
+	// its codes are translated to this loader's codes by adding its names
+	// (with their counts) to the dictionaries in the order it first saw them
+	private void merge(AirDataLoader part) {
+		LoadPhaseEvent phase = DashboardStats.beginPhase("merge");
+		int[] siteCodes = translate(part.sites, sites);
+		int[] parameterCodes = translate(part.parameters, parameters);
+		int[] descriptionCodes = translate(part.descriptions, descriptions);
+		minYear = Math.min(minYear, part.minYear);
+		maxYear = Math.max(maxYear, part.maxYear);
+
+		store.addAll(part.store, siteCodes, parameterCodes, descriptionCodes);
+		if (statistics != null) {
+			statistics.addAll(part.statistics, siteCodes, parameterCodes);
+		}
+		DashboardStats.endPhase(phase);
+	}
+
+	private static int[] translate(StringDictionary from,
+			StringDictionary to) {
+		int[] codes = new int[from.size()];
+		for (int i = 0; i < codes.length; i++) {
+			codes[i] = to.add(from.name(i), from.count(i));
+		}
+		return codes;
+	}
+
+	// loads the file from its snapshot sidecar when there is an up to date
+	// one, and otherwise parses the text (with loadParallel) and saves a new
+	// snapshot for next time. a snapshot that cannot be read or written is
+	// reported and the text is used instead
+	public void loadWithSnapshot(String filename, int parallelism)
+			throws IOException {
+		SnapshotCache cache = new SnapshotCache(filename);
+		ReadingStore cached = null;
+		LoadPhaseEvent phase = DashboardStats.beginPhase("snapshot read");
+		try {
+			cached = cache.read();
+		} catch (IOException e) {System.out.println(e);};
+		if (cached != null) {
+			DashboardStats.endPhase(phase, cached.size(), 
+					cache.getSnapshotSize());
+		} else {
+			DashboardStats.endPhase(phase);
+		}
+		
+		if (cached != null) {
+			store = cached;
+			sites = cached.getSites();
+			parameters = cached.getParameters();
+			descriptions = cached.getDescriptions();
+			minYear = cache.getMinYear();
+			maxYear = cache.getMaxYear();
+			// the snapshot is only used when the file has not changed, so
+			// it ends where the file did when it was checked
+			endOffset = cache.getSourceSize();
+			fromSnapshot = true;
+			// a compressed file can still not be followed, however it was
+			// read
+			compressed = DecompressingChannel.isCompressed(
+					Paths.get(filename));
+			return;
+		}
+		
+		// the size and modification time are taken before parsing, so a
+		// file that changes while it is parsed never gets a snapshot that
+		// looks up to date but is missing the readings added to it
+		Path path = Paths.get(filename);
+		long size = Files.size(path);
+		long modified = Files.getLastModifiedTime(path).toMillis();
+		loadParallel(filename, parallelism);
+		// the parse went past the size taken (the file grew), or a last
+		// line was left for the follower and is not in the store, so a
+		// snapshot would not be of exactly the bytes that were parsed
+		if (!compressed && endOffset != size) {
+			return;
+		}
+		phase = DashboardStats.beginPhase("snapshot write");
+		try {
+			cache.write(getStore(), minYear, maxYear, size, modified);
+		} catch (IOException e) {System.out.println(e);};
+		DashboardStats.endPhase(phase);
+	}
+
+	// readings loaded so far, whether they were kept or only counted
+	private long readingsLoaded() {
+		return statistics != null ? statistics.getNumReadings() : store.size();
+	}
+
+	// parses the line that starts at the given offset of the text, adding
+	// the offset to the message of a bad number, date or index value so the
+	// line can be found. lines read by readAppended that are bad are
+	// reported and skipped instead, so one bad line does not stop the
+	// lines after it from being followed
+	private void parseLine(byte[] bytes, int start, int end, long offset) {
+		try {
+			parseLine(bytes, start, end);
+		} catch (IllegalArgumentException e) {
+			String message = e.getMessage() + " in the line at byte " + offset;
+			if (skipBadLines) {
+				System.out.println("Skipped: " + message);
+				return;
+			}
+			if (e instanceof NumberFormatException) {
+				throw new NumberFormatException(message);
+			}
+			throw new IllegalArgumentException(message, e);
+		}
+	}
+
+	// splits one line into its fields and adds them to the store
+	private void parseLine(byte[] bytes, int start, int end) {
+		// ignore the carriage return of windows line endings
+		if (end > start && bytes[end - 1] == '\r') {
+			end--;
+		}
+		// skip blank lines such as a trailing empty line at the end
+		if (end == start) {
+			return;
+		}
+
+		int field = 0;
+		fieldStart[0] = start;
+		for (int i = start; i < end && field < NUM_FIELDS - 1; i++) {
+			if (bytes[i] == '\t') {
+				fieldEnd[field] = i;
+				field++;
+				fieldStart[field] = i + 1;
+			}
+		}
+		fieldEnd[field] = end;
+		// pad out lines that are missing the trailing empty columns
+		for (int f = field + 1; f < NUM_FIELDS; f++) {
+			fieldStart[f] = end;
+			fieldEnd[f] = end;
+		}
+
+		// the numbers come first, so a bad line is given up on before its
+		// names are counted in the dictionaries
+		int id = parseInt(bytes, fieldStart[0], fieldEnd[0]);
+		int day = parseDate(bytes, fieldStart[1], fieldEnd[1]);
+		int year = parsedYear;
+		int indexValue = parseInt(bytes, fieldStart[4], fieldEnd[4]);
+		int siteCode = sites.add(bytes, fieldStart[2], fieldEnd[2]);
+		int parameterCode = parameters.add(bytes, fieldStart[3], fieldEnd[3]);
+		int descriptionCode = description(bytes);
+
+		minYear = Math.min(minYear, year);
+		maxYear = Math.max(maxYear, year);
+		// only counted, so the health texts are not kept either
+		if (statistics != null) {
+			statistics.add(siteCode, parameterCode, year, indexValue);
+			return;
+		}
+
+		// the health texts stay as bytes in the store's pool until needed
+		TextPool texts = store.getTexts();
+		int advisoryCode = texts.add(bytes, fieldStart[6], fieldEnd[6]);
+		int effectsCode = texts.add(bytes, fieldStart[7], fieldEnd[7]);
+		store.add(id, day, year, siteCode, parameterCode, indexValue,
+				descriptionCode, advisoryCode, effectsCode);
+	}
+
+	// finds the normalized description code of the line being parsed. each
+	// raw spelling is only normalized the first time it shows up
+	private int description(byte[] bytes) {
+		int before = rawDescriptions.size();
+		int raw = rawDescriptions.add(bytes, fieldStart[5], fieldEnd[5]);
+		if (raw < before) {
+			descriptions.increment(descriptionOf[raw]);
+			return descriptionOf[raw];
+		}
+		if (raw == descriptionOf.length) {
+			descriptionOf = Arrays.copyOf(descriptionOf, raw * 2);
+		}
+		descriptionOf[raw] = descriptions.add(
+				ReadingGDR.normalizeDescription(rawDescriptions.name(raw)));
+		return descriptionOf[raw];
+	}
+
+	// parses a (possibly negative) whole number from the given byte range.
+	// like Integer.parseInt, an empty field, one with anything but digits
+	// and one too big for an int are all errors rather than 0
+	private static int parseInt(byte[] bytes, int start, int end) {
+		boolean negative = start < end && bytes[start] == '-';
+		int first = negative ? start + 1 : start;
+		long value = 0;
+		for (int i = first; i < end; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+				throw badNumber(bytes, start, end);
+			}
+			value = value * 10 + digit;
+		}
+		if (first == end || value > Integer.MAX_VALUE) {
+			throw badNumber(bytes, start, end);
+		}
+		return (int) (negative ? -value : value);
+	}
+
+	private static NumberFormatException badNumber(byte[] bytes, int start,
+			int end) {
+		return new NumberFormatException("bad number in data file: \""
+				+ new String(bytes, start, end - start,
+				StandardCharsets.UTF_8) + "\"");
+	}
+
+	// parses a M/D/YYYY date into days since 1/1/1970. the year is also kept
+	// in parsedYear so it does not have to be worked back out of the day
+	private int parseDate(byte[] bytes, int start, int end) {
+		int firstSlash = start;
+		while (firstSlash < end && bytes[firstSlash] != '/') {
+			firstSlash++;
+		}
+		int lastSlash = end - 1;
+		while (lastSlash > firstSlash && bytes[lastSlash] != '/') {
+			lastSlash--;
+		}
+		if (lastSlash <= firstSlash) {
+			throw new NumberFormatException("bad date in data file: "
+					+ new String(bytes, start, end - start,
+					StandardCharsets.UTF_8));
+		}
+		int month = parseInt(bytes, start, firstSlash);
+		int day = parseInt(bytes, firstSlash + 1, lastSlash);
+		parsedYear = parseInt(bytes, lastSlash + 1, end);
+		return ReadingStore.epochDay(parsedYear, month, day);
+	}
+
+	// returns the store trimmed to the number of readings actually found,
+	// along with the dictionaries its site, parameter and description codes
+	// refer to
+	public ReadingStore getStore() {
+		store.trim();
+		store.setDictionaries(sites, parameters, descriptions);
+		return store;
+	}
+
+	// the readings loaded so far as a store that later appends do not
+	// change (see ReadingStore.view). unlike getStore it does not trim the
+	// columns, so appending afterwards does not copy all of them again
+	public ReadingStore view() {
+		store.setDictionaries(sites, parameters, descriptions);
+		return store.view();
+	}
+
+	// whether the last load came from a snapshot instead of the text
+	public boolean isFromSnapshot() {
+		return fromSnapshot;
+	}
+
+	// whether the last load read a gzip or zstd compressed file, which
+	// cannot be followed for appended lines
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	// offset just past the last line that has been loaded
+	public long getEndOffset() {
+		return endOffset;
+	}
+
+	public int getNumReadings() {
+		return store.size();
+	}
+
+	// the counts collected when setStatisticsOnly is on, otherwise null
+	public ReadingStatistics getStatistics() {
+		return statistics;
+	}
+
+	public int getMinYear() {
+		return minYear;
+	}
+
+	public int getMaxYear() {
+		return maxYear;
+	}
+
+	// unique sites in the order they first appear in the file
+	public String[] getSites() {
+		return sites.names();
+	}
+
+	// unique parameters in the order they first appear in the file
+	public String[] getParameters() {
+		return parameters.names();
+	}
+
+	// number of readings of each parameter, in the same order as getParameters
+	public int[] getParameterCounts() {
+		return parameters.counts();
+	}
+}
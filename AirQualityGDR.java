@@ -6,7 +6,9 @@
 
 // Data Source: https://data.wprdc.org/dataset/allegheny-county-air-quality
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -18,12 +20,19 @@ import javafx.scene.control.ToggleGroup;
 import javafx.scene.control.TextField;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.Label;
-import java.util.Scanner;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Button;
 import java.io.*;
 import javafx.scene.control.MenuButton;
 import javafx.scene.control.MenuItem;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import javafx.scene.input.MouseEvent;
+import javafx.util.Duration;
 
 /*
 Windows commands for compiling, running:
@@ -32,27 +41,74 @@ go to https://openjfx.io/openjfx-docs/#install-javafx to find the compile and ru
 
 public class AirQualityGDR extends Application {
 	// filename in current directory to use as data source
-	// private final String filename = "airQualitySmall.txt";
-	// private final String filename = "airQualitySynthetic.txt";
-	// private final String filename = "airQualityModerate.txt";
-	// private final String filename = "airQualityLarge.txt";
-	// private final String filename = "airQualityVeryLarge.txt";
-	private final String filename = "airQualityFull.txt";
+	// private String filename = "airQualitySmall.txt";
+	// private String filename = "airQualitySynthetic.txt";
+	// private String filename = "airQualityModerate.txt";
+	// private String filename = "airQualityLarge.txt";
+	// private String filename = "airQualityVeryLarge.txt";
+	// private String filename = "airQualityYears";	// directory of partitions
+	private String filename = "airQualityFull.txt";
 	
 	// constants to define a 600x600 plotsize with 50 pixel buffer on all sides
 	private final int PLOTSIZE = 800;
 	private final int BUFFER = 50;
+	private final double BAR_SPACING = 5;	// gap between neighbouring bars
+	// ms between checks for new lines while following the data file
+	private final long FOLLOW_INTERVAL = 1000;
+	// most filter combinations whose counts are kept in countCache
+	private final int CACHE_SIZE = 64;
+	// ms without typing before the year field is applied
+	private final double TYPING_PAUSE = 250;
 	
-	private int maxYear;	// most recent year appearing in file
-	private int minYear;	// oldest year appearing in file
-	private int maxReadings;	// most readings of one type to appear in file
+	// the data being shown: the readings, the count table, the sites and
+	// parameters and the year and day bounds. it never changes, and is only
+	// replaced whole by publish, on the JavaFX Application Thread, with the
+	// bars and menus fitted to it in the same step. every handler reads it
+	// once, so it always works from one consistent snapshot. null until the
+	// data has loaded
+	private final AtomicReference<DatasetSnapshot> data =
+			new AtomicReference<DatasetSnapshot>();
+	// makes every new snapshot (loads, reloads, appended lines and partitions
+	// read) one at a time, so the window never waits while one is made
+	private final ExecutorService builder = 
+			Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "dataset builder");
+		thread.setDaemon(true);
+		return thread;
+	});
+	// the newest snapshot made, which is ahead of data until it has been
+	// published. only used on the builder's thread
+	private DatasetSnapshot newest;
+	// set while a reload is waiting to start, so changes that come one
+	// after another only reload once
+	private final AtomicBoolean reloadWaiting = new AtomicBoolean();
+	private int parallelism;	// threads that parse the text
 	
-	
-// UNCOMMENT THE FOLLOWING LINE OF CODE ONCE YOU HAVE CREATED A ReadingXXX.java FILE
-	private ReadingGDR[] readings;	// array to store all data read out of file
+	// counts of the filter combinations shown most recently
+	private CountCache countCache = new CountCache(CACHE_SIZE);
+	// works out the filtered bars off the JavaFX Application Thread, and
+	// only shows the result of the newest filter
+	private QueryRunner queries = new QueryRunner("filter query", 
+			Platform::runLater);
 	private Label[] parameters;		// unique parameter names as labels for bars
 	private Rectangle[] bars;		// bars for each parameter to display in chart
-	private String[] sites;			// unique site names appearing in file
+	private double barWidth;		// width of every bar, set in createBars
+	// the values the bars are showing now and the metric they are of,
+	// which change together once a query's result is drawn, so a click
+	// never labels the old values with a metric chosen since
+	private double[] shownValues;
+	private String shownValuesMetric;
+	
+	// what the bars show for each parameter, one of METRICS
+	private final String[] METRICS = {"Count", "Mean", "Max", 
+			"95th percentile"};
+	private String metric = "Count";
+	private MenuButton metricMenu;	// dropdown of the METRICS
+	private FileFollower follower;	// reads lines appended to the file
+	private FileWatcher watcher;	// reloads the data when it changes
+	// reads the partitions the time series needs, apart from the filters
+	private QueryRunner partitionReads = new QueryRunner("partition read", 
+			Platform::runLater);
 
 	// GUI elements for radio buttons to select all data or data filtered by
 	// air quality description based on the measured parameter
@@ -62,208 +118,42 @@ public class AirQualityGDR extends Application {
 	// GUI elements for text field to select data based on year
 	private Label yearLabel;
 	private TextField yearSelect;
+	// applies the year field once typing in it pauses
+	private PauseTransition typingPause;
+	private boolean settingYear = false;	// the field is changed by code
+	
+	private MenuButton siteMenu;	// dropdown of every site, filled once loaded
+	private CheckBox followBox;		// keeps reading lines added to the file
+	private Button reloadButton;	// loads the data again in the background
+	private CheckBox gridBox;		// switches to a chart for every site
+	private SmallMultiples grid;	// the chart for every site, on a Canvas
+	private CheckBox seriesBox;		// switches to index values over time
+	private MenuButton parameterMenu;	// parameter shown over time
+	private TimeSeriesView seriesView;	// index values over time, on a Canvas
+	private String activeParameter;	// null shows the first parameter
+	
+	// the filters the bars are currently showing besides the description, so
+	// they can be redrawn when new readings arrive. null means the site or
+	// days filter is off
+	private String activeSite = null;
+	private DateRange activeDates = null;
 	
 	private Label showing;	// report which (sub)set of the data is being shown
 	private Label details;	// report number of readings represented by clicked bar
+	private Label loadStatus;	// report loading progress and load times
+	
+	private Group root;		// every node in the scene, bars are added as found
+	private long firstPaintTime = -1;	// ms from launch until bars were drawn
 
     public void start(Stage primaryStage) {
-
-		
-		// set values for numReadings, minYear, and maxYear
-		// minYear cannot be 0 since it would always be lower than any year
-		int numReadings = 0;
-		minYear = 10000;
-		maxYear = 0;
-		
-		// create an array of unique sites, assuming there are never more than
-		// 100 different sites, based on specification. also create a numSites
-		// variable to tell how long the sites array should be
-		String[] foundSites = new String[100];
-		int numSites = 0;
-		
-		// create an array of unique parameters, again assuming never more than
-		// 100. Also creates an array of the counts for each parameter with
-		// the same assumption. creates a numParameters to determine the length
-		// of the parameters and bars arrays.
-		String[] foundParameters = new String[100];
-		int numParameters = 0;
-		int[] countParameters = new int[100];
-
-		// try-catch block for first pass through reading the data file
-		try {
-			Scanner filescan = new Scanner(new File(filename));	
-			// set delimiter to help deal with spaces
-			filescan.useDelimiter("\\t|\\n");
-			
-			// skip header
-			filescan.nextLine();
-			
-			// set up while loop for reading the first pass
-			while(filescan.hasNext()) {
-				filescan.next(); // skip _id
-				String yearString = filescan.next(); // read in the whole date
-				String site = filescan.next(); // read in the site
-				String parameter = filescan.next(); // read in parameter
-				filescan.next(); // skip index_value
-				filescan.next(); // skip description
-				filescan.next(); // skip health_advisory
-				filescan.next(); // skip health_effects
-				
-				//update the number of readings
-				numReadings++;
-				
-				//extract year by taking a substring of the characters after
-				//the last "/" and parsing it to an integer
-				int year = Integer.parseInt(yearString.substring(
-						yearString.lastIndexOf("/")+1));
-				minYear = Math.min(minYear, year);
-				maxYear = Math.max(maxYear, year);
-				
-				// find the unique sites. a boolean is required here so that
-				// null values are not compared
-				boolean foundSite = false;
-                for (int i = 0; i < foundSites.length; i++) {
-                    if (foundSites[i] != null && foundSites[i].equals(site)) {
-                        foundSite = true;
-                    }
-                }
-				// assign sites to the foundSites array if it is not already
-				// and increment the number of unique sites
-                if (!foundSite) {
-                    foundSites[numSites] = site;
-                    numSites++;
-                }
-				
-				// find the unique parameters, again needing a boolean for the
-				// same reason to avoid checking null values
-				boolean foundParameter = false;
-                for (int i = 0; i < foundParameters.length; i++) {
-                    if (foundParameters[i] != null 
-							&& foundParameters[i].equals(parameter)) {
-                        foundParameter = true;
-						// increment that specific parameter by 1 each time it 
-						// is found in the file
-                        countParameters[i]++;
-                    }
-                }
-				// assign parameters to the foundParameters array
-				// and set the count to 1 initially
-                if (!foundParameter) {
-                    foundParameters[numParameters] = parameter;
-                    countParameters[numParameters] = 1; 
-					// increment numParameters to avoid replacing parameters
-                    numParameters++;
-				}
-			}
-		} catch (IOException e) {System.out.println(e);};
-		
-		// find the highest count for any of the parameters
-		// by looping through the counts
-		maxReadings = 0;
-        for (int i = 0; i < numParameters; i++) {
-            if (countParameters[i] > maxReadings) {
-                maxReadings = countParameters[i];
-            }
-        }
-		
-		// after the first pass over the data file is fully processed, each
-		// of the following facts should be able to be printed out for
-		// testing purposes
-		System.out.println("Number of readings: " + numReadings);
-		System.out.println("Earliest year: " + minYear);
-		System.out.println("Latest year: " + maxYear);
-		System.out.println("Most readings per parameter: " + maxReadings);
-		System.out.println("Number of unique sites: " + numSites);
-		System.out.println("Number of unique parameters: " + numParameters);
-		
-		// initialize and instantiate the unique sites
-		// being sure to use the numSites so it doesn't assign any of the nulls
-		sites = new String[numSites];
-		for (int i = 0; i < sites.length; i++) {
-			sites[i] = foundSites[i];
-		}
-		
-		// instantiate and initialize the unique parameters
-		// using numParameters to avoid assigning any nulls
-		parameters = new Label[numParameters];
-		for (int i = 0; i < parameters.length; i++) {
-			parameters[i] = new Label(foundParameters[i]);
+		// load and handler timings can be watched in JConsole from here on
+		DashboardStats.register();
+		// the data file or directory can be given with --data=name
+		String data = getParameters().getNamed().get("data");
+		if (data != null) {
+			filename = data;
 		}
 		
-		// instantiate and initialize the bars
-		bars = new Rectangle[numParameters];
-		// defining the spacing and the width outside loop since it does not
-		// require information about any specific index
-        double barSpacing = 5;
-		double barWidth = ((double) PLOTSIZE - 
-				(bars.length - 1)*barSpacing)/bars.length;
-		// loop through to assign rectangle objects to bars from countParameters
-		for (int i = 0; i < bars.length; i++) {
-			// height has to be defined within the loop since it requires
-			// a specific index
-			double barHeight = (countParameters[i] / (double) maxReadings) * 
-					(PLOTSIZE);
-			// initialize the new rectangle object with specific parameters
-			// using the constructor Rectangle(x, y, width, height)
-            bars[i] = new Rectangle(BUFFER + (barWidth + barSpacing) * i, 
-					PLOTSIZE + BUFFER - barHeight,
-					barWidth,
-					barHeight); 
-			
-			// add the text from the parameters to label the bars
-			parameters[i].setText(foundParameters[i]);
-            parameters[i].setLayoutX(BUFFER + (barWidth + barSpacing) * i); 
-			// we want the y position to be in the middle of the bottom buffer
-            parameters[i].setLayoutY(PLOTSIZE + BUFFER*1.5);
-        }
-		
-		// instantiate the array of readings from the number of readings
-		readings = new ReadingGDR[numReadings];
-		
-		// try-catch block for second pass through the file
-		try {
-			Scanner filescan = new Scanner(new File(filename));		
-			filescan.useDelimiter("\\t|\\n");
-			
-			//skip the header
-			filescan.nextLine();
-			
-			// since we know the numReadings now (which is the same as the
-			// length of the readings array), we can use a for loop for better
-			// design choices
-			for(int i = 0; i < readings.length; i++) {
-				// begin reading through the file, this time not skipping
-				int id = filescan.nextInt(); // extract _id
-				String date = filescan.next(); // year parsed to int below
-				String site = filescan.next(); // extract site
-				String parameter = filescan.next(); // extract parameter
-				int indexValue = filescan.nextInt(); // extract the index. 
-				// indexValue can be removed if desired, but assuming a wide
-				// range of uses, it is included in the object class
-				String description = filescan.next(); // extract description
-				
-				String healthAdvisory = filescan.next();
-				String healthEffects = filescan.next();
-				// the 2 above lines read in the health_advisory and
-				// health_effects. these are not necessary in this visualization
-				// but are part of the object class to accomodate for various
-				// use cases.
-				
-				// parse the year to an int
-				int year = Integer.parseInt(date.substring(
-						date.lastIndexOf("/")+1));
-				
-				// Create a ReadingGDR object and populate its fields
-				ReadingGDR reading = new ReadingGDR(id, year, site, parameter, 
-						indexValue, description, healthAdvisory, healthEffects);
-				// assign the new ReadingGDR object to the array of readings
-				readings[i] = reading;
-				
-			}
-			
-		} catch (IOException e) {System.out.println(e);};
-		
-		
 		// create the ToggleGroup for the radio buttons and associates all
 		// four RadioButton objects with this ToggleGroup
 		qualitySelect = new ToggleGroup();
@@ -293,28 +183,30 @@ public class AirQualityGDR extends Application {
 		// attach event handler for radio button
 		unhealthyButton.setOnAction(this::radioAction);
 		
-		MenuButton siteMenu = new MenuButton("Site");
+		// the sites are only known once the data has loaded, so the items
+		// are added to this menu in finishLoading
+		siteMenu = new MenuButton("Site");
 		siteMenu.setTranslateX(290);
 		siteMenu.setTranslateY(5);
-
-		// this loop add each MenuItem object to the MenuButton and attaches
-		// the shared siteAction event handler to all MenuItem objects
-		for (int i=0; i<sites.length; i++) {
-			MenuItem newItem = new MenuItem(sites[i]);
-			siteMenu.getItems().add(newItem);
-			newItem.setOnAction(this::siteAction);
-		}
 		
 		Label yearLabel = new Label("Year: ");
 		yearLabel.setTranslateX(370);
 		yearLabel.setTranslateY(10);
 		
 		yearSelect = new TextField();
-		yearSelect.setPrefWidth(50);
+		yearSelect.setPrefWidth(85);
 		yearSelect.setTranslateX(410);
 		yearSelect.setTranslateY(5);
-		// attach event handler for Year text field
+		// attach event handler for Year text field. the days typed are also
+		// shown as soon as typing pauses, without waiting for Enter
 		yearSelect.setOnAction(this::yearAction);
+		typingPause = new PauseTransition(Duration.millis(TYPING_PAUSE));
+		typingPause.setOnFinished(this::yearTyped);
+		yearSelect.textProperty().addListener((property, oldText, newText) -> {
+			if (!settingYear) {
+				typingPause.playFromStart();
+			}
+		});
 		
 		showing = new Label("All Readings");
 		showing.setTranslateX(500);
@@ -323,143 +215,779 @@ public class AirQualityGDR extends Application {
 		details = new Label("");
 		details.setTranslateX(500);
 		details.setTranslateY(25);
-
-		Group root = new Group(allButton, goodButton, moderateButton,
-			unhealthyButton, siteMenu, yearLabel, yearSelect, showing, details);
-
-		for (int i=0; i<parameters.length; i++) {
-			root.getChildren().add(parameters[i]);
-			root.getChildren().add(bars[i]);
+		
+		loadStatus = new Label("Loading " + filename + "...");
+		loadStatus.setTranslateX(10);
+		loadStatus.setTranslateY(30);
+		
+		// the bars can show the number of readings of each parameter or a
+		// summary of their index values
+		metricMenu = new MenuButton(metric);
+		metricMenu.setTranslateX(400);
+		metricMenu.setTranslateY(26);
+		for (int i = 0; i < METRICS.length; i++) {
+			MenuItem newItem = new MenuItem(METRICS[i]);
+			metricMenu.getItems().add(newItem);
+			newItem.setOnAction(this::metricAction);
 		}
 		
+		// when checked, lines appended to the data file by whatever is
+		// writing it are read in and added to the bars as they arrive
+		followBox = new CheckBox("Follow file");
+		followBox.setTranslateX(780);
+		followBox.setTranslateY(10);
+		followBox.setOnAction(this::followAction);
+		
+		// loads the data again without closing the window. the old data
+		// stays on show, and the filters stay as they are, until the new
+		// data is ready. it also happens on its own when the data changes
+		reloadButton = new Button("Reload");
+		reloadButton.setTranslateX(610);
+		reloadButton.setTranslateY(26);
+		reloadButton.setOnAction(this::reloadAction);
+		
+		// when checked, the single chart is replaced by a grid of small
+		// charts, one for each site, drawn on a Canvas
+		gridBox = new CheckBox("Grid by site");
+		gridBox.setTranslateX(780);
+		gridBox.setTranslateY(30);
+		gridBox.setOnAction(this::gridAction);
+		grid = new SmallMultiples(PLOTSIZE, PLOTSIZE);
+		grid.getCanvas().setLayoutX(BUFFER);
+		grid.getCanvas().setLayoutY(BUFFER);
+		grid.getCanvas().setVisible(false);
+		
+		// when checked, the chart is replaced by the index values of the
+		// chosen site and parameter over time. the parameters are added to
+		// the menu in finishLoading like the sites
+		seriesBox = new CheckBox("Time series");
+		seriesBox.setTranslateX(680);
+		seriesBox.setTranslateY(10);
+		seriesBox.setOnAction(this::seriesAction);
+		parameterMenu = new MenuButton("Parameter");
+		parameterMenu.setTranslateX(680);
+		parameterMenu.setTranslateY(26);
+		seriesView = new TimeSeriesView(PLOTSIZE, PLOTSIZE);
+		seriesView.getCanvas().setLayoutX(BUFFER);
+		seriesView.getCanvas().setLayoutY(BUFFER);
+		seriesView.getCanvas().setVisible(false);
+
+		root = new Group(allButton, goodButton, moderateButton,
+			unhealthyButton, siteMenu, yearLabel, yearSelect, showing, details,
+			loadStatus, followBox, gridBox, grid.getCanvas(), seriesBox,
+			parameterMenu, seriesView.getCanvas(), metricMenu, reloadButton);
+		
+		// no bars until the first parameters have been read
+		parameters = new Label[0];
+		bars = new Rectangle[0];
+		
+		// the filters cannot be used until there is data to filter
+		setControlsDisabled(true);
+		
         Scene scene = new Scene(root, PLOTSIZE+BUFFER*2, PLOTSIZE+BUFFER*2, 
 				Color.WHITE);
 		// The following line attaches the event handler "mousePressed" to the 
 		// scene to be called when there is a mouse click within the window.
 		scene.addEventHandler(MouseEvent.MOUSE_PRESSED, this::mousePressed);		
+		// the canvas charts fill whatever size the window is made
+		scene.widthProperty().addListener((property, oldWidth, newWidth) ->
+				resizeCanvases(scene));
+		scene.heightProperty().addListener((property, oldHeight, newHeight) ->
+				resizeCanvases(scene));
         primaryStage.setTitle("Air Quality");
         primaryStage.setScene(scene);
         primaryStage.show();
+		
+		loadData();
     }
 	
-	//**********************START OF HELPER METHODS****************************
+	//***********************START OF LOADING METHODS**************************
 	
-	// helper method to filter the data based on a specific description
-	// designed to work for all descriptions
-	private ReadingGDR[] filterReadingsDesc(String description) {
-		// initialize a count for the number of instances of that description
-		// and loop through the array of ReadingGDRs
-		int count = 0; 
-		for (int i = 0; i < readings.length; i++) {
-			if (readings[i].getDescription().equals(description)) {
-				count++;
+	// reads the data file on the builder's thread so the window can be shown
+	// and drawn while the file is still being parsed. the loader reports the
+	// counts read so far every 100 ms and those are drawn as the bars grow.
+	// if the file has not changed since the last launch its snapshot is
+	// loaded instead and the text is not parsed at all. for a directory of
+	// partitions only the manifest is read (see PartitionedDataset). from
+	// then on the data is reloaded whenever it changes
+	private void loadData() {
+		// number of threads used to parse the text, which can be set with
+		// --parallelism=N on the command line
+		String workers = getParameters().getNamed().get("parallelism");
+		parallelism = Runtime.getRuntime().availableProcessors();
+		if (workers != null) {
+			parallelism = Integer.parseInt(workers);
+		}
+		
+		// the watcher calls this on its own thread, so the change is
+		// handled on the JavaFX Application Thread
+		watcher = new FileWatcher(filename, FOLLOW_INTERVAL, size -> 
+				Platform.runLater(() -> fileChanged(size)));
+		reload();
+	}
+	
+	// loads all of the data into a new snapshot on the builder's thread and
+	// publishes it once it is done. the snapshot on show (if any) stays
+	// usable the whole time, so nothing waits for the load, and only the
+	// first load draws the bars as they grow
+	private void reload() {
+		// a reload that has not started yet will see this change too
+		if (!reloadWaiting.compareAndSet(false, true)) {
+			return;
+		}
+		long loadStart = System.nanoTime();
+		boolean first = data.get() == null;
+		// the loader calls this on its own thread, so the drawing is
+		// handed over to the JavaFX Application Thread
+		AirDataLoader.ProgressListener listener = (numReadings, bytesRead, 
+				totalBytes, foundParameters, countParameters) -> 
+				Platform.runLater(() -> showProgress(first, numReadings, 
+				bytesRead, totalBytes, foundParameters, countParameters, 
+				loadStart));
+		builder.execute(() -> {
+			reloadWaiting.set(false);
+			try {
+				// the file may be followed later, so a last line that is
+				// still being written is left for the follower
+				DatasetSnapshot next = DatasetSnapshot.open(filename, 
+						parallelism, true, listener);
+				newest = next;
+				Platform.runLater(() -> publish(next, loadStart));
+			} catch (IOException | RuntimeException e) {
+				System.out.println(e);
+				Platform.runLater(() -> loadStatus.setText("Could not load " 
+						+ filename));
 			}
+		});
+	}
+	
+	// draws the partial counts while the file is loading for the first
+	// time. the final highest count is not known yet, so it is estimated
+	// from how much of the file has been read and the bars grow towards
+	// their final heights. a reload only reports how far it has got, since
+	// the bars are still showing the data from before
+	private void showProgress(boolean first, int numReadings, long bytesRead,
+			long totalBytes, String[] foundParameters, int[] countParameters, 
+			long loadStart) {
+		double fractionRead = bytesRead / (double) Math.max(1, totalBytes);
+		String progress = numReadings + " readings (" 
+				+ Math.round(fractionRead * 100) + "%)";
+		if (!first) {
+			loadStatus.setText("Reloading... " + progress);
+			return;
+		}
+		if (firstPaintTime < 0) {
+			firstPaintTime = (System.nanoTime() - loadStart) / 1000000;
 		}
-		// create a new array of the filtered data so as to not override the 
-		// original array. then loop through the original array to assign 
-		// ReadingGDR objects to the new array where the description matches
-		ReadingGDR[] filteredReadings = new ReadingGDR[count];
-		int index = 0;
-		for (int i = 0; i < readings.length; i++) {
-			if (readings[i].getDescription().equals(description)) {
-				filteredReadings[index] = readings[i];
-				index++;
+		if (foundParameters.length != bars.length) {
+			createBars(foundParameters);
+		}
+		
+		int mostReadings = 1;
+		for (int i = 0; i < countParameters.length; i++) {
+			mostReadings = Math.max(mostReadings, countParameters[i]);
+		}
+		setVisualHeight(countParameters, Math.max(mostReadings, 
+				mostReadings / Math.max(fractionRead, 0.01)));
+		
+		loadStatus.setText("Loading... " + progress);
+	}
+	
+	// shows a new snapshot. the swap of data is the only change to it, so a
+	// handler sees either the old snapshot or the new one and never a mix,
+	// and the bars, their labels and the menus are fitted to the new one's
+	// parameters and sites before any handler can run again. the filters
+	// chosen stay as they are and are redrawn from the new data. loadStart
+	// is when the load began, for a snapshot from a new load
+	private void publish(DatasetSnapshot next, long loadStart) {
+		DatasetSnapshot previous = data.getAndSet(next);
+		// the cached counts are by code, and a new load can give other codes
+		countCache.invalidate();
+		
+		boolean newParameters = !sameNames(next.getParameters());
+		if (newParameters) {
+			createBars(next.getParameters());
+		}
+		if (newParameters || previous == null) {
+			parameterMenu.getItems().clear();
+			addParameterItems();
+		}
+		if (previous == null 
+				|| !Arrays.equals(previous.getSites(), next.getSites())) {
+			// this loop add each MenuItem object to the MenuButton and
+			// attaches the shared siteAction event handler to all MenuItem
+			// objects
+			siteMenu.getItems().clear();
+			String[] sites = next.getSites();
+			for (int i=0; i<sites.length; i++) {
+				MenuItem newItem = new MenuItem(sites[i]);
+				siteMenu.getItems().add(newItem);
+				newItem.setOnAction(this::siteAction);
 			}
 		}
-		return filteredReadings;
-	}
-	
-	// helper method to filter based on the site. This has to be different
-	// and include an array of ReadingGDR objects because it has to be able
-	// to function alongside the description filter. this allows it to
-	// filter the data for a specific description
-	private ReadingGDR[] filterReadingsSite(ReadingGDR[] readingInput, 
-			String site) {
-		// as in the previous method, loop through the array to find the count
-		// of instances where a specific site occurs within that subset of data.
-		// it is different than previous because it loops through the already
-		// filtered data based on description rather than the whole dataset
-		// assuming the "All" radio button is not selected.
-		int count = 0; 
-		for (int i = 0; i < readingInput.length; i++) {
-			if (readingInput[i].getSite().equals(site)) {
-				count++;
+		setGridData(next);
+		if (!next.isSameLoad(previous)) {
+			loaded(previous == null, next, loadStart);
+		}
+		// this also supersedes any query still working on the old snapshot
+		refresh();
+		refreshSeries();
+	}
+	
+	// true if the bars are labelled with the given parameters in order
+	private boolean sameNames(String[] foundParameters) {
+		if (foundParameters.length != parameters.length) {
+			return false;
+		}
+		for (int i = 0; i < parameters.length; i++) {
+			if (!parameters[i].getText().equals(foundParameters[i])) {
+				return false;
 			}
 		}
-		// now create a new array with the twice filtered data. then loop
-		// through the filtered dataset to assign objects to the new array
-		// where the site matches
-		ReadingGDR[] filteredReadings = new ReadingGDR[count];
-		int index = 0;
-		for (int i = 0; i < readingInput.length; i++) {
-			if (readingInput[i].getSite().equals(site)) {
-				filteredReadings[index] = readingInput[i];
-				index++;
+		return true;
+	}
+	
+	// called once a whole load (the first or a reload) has been published.
+	// the follower and the watcher start over from the new data, and the
+	// time it took is reported
+	private void loaded(boolean first, DatasetSnapshot next, long loadStart) {
+		if (first) {
+			setControlsDisabled(false);
+		}
+		// the follower carries on from the last line the loader read. the
+		// listener is called on the follower's thread, so the new readings
+		// are added on the builder's thread. lines appended to a compressed
+		// file cannot be read on their own, and a directory has no single
+		// file to follow
+		if (follower != null) {
+			follower.close();
+			follower = null;
+		}
+		boolean followable = !next.isCompressed() && next.getDataset() == null;
+		if (followable) {
+			follower = new FileFollower(filename, next.getEndOffset(), 
+					FOLLOW_INTERVAL, part -> builder.execute(() -> 
+					append(next, part)));
+			if (followBox.isSelected()) {
+				follower.start();
 			}
+		} else {
+			followBox.setSelected(false);
+		}
+		followBox.setDisable(!followable);
+		// changes made while it was loading are seen at the next check
+		watcher.watch(next.getSignature());
+		
+		long loadTime = (System.nanoTime() - loadStart) / 1000000;
+		// a file small enough to load before the first progress report
+		// is first drawn right now
+		if (firstPaintTime < 0) {
+			firstPaintTime = loadTime;
+		}
+		String loadedText = first ? "Loaded " : "Reloaded ";
+		if (next.getDataset() != null) {
+			loadStatus.setText((first ? "Opened " : "Reopened ") 
+					+ next.getNumReadings() + " readings in " + loadTime 
+					+ " ms, " + partitionStatus(next));
+		} else {
+			loadStatus.setText(loadedText + next.getNumReadings() 
+					+ " readings " 
+					+ (next.isFromSnapshot() ? "from snapshot " : "")
+					+ (next.isCompressed() ? "compressed " : "") + "in " 
+					+ loadTime + " ms" + (first ? " (first bars after " 
+					+ firstPaintTime + " ms)" : ""));
+		}
+		
+		// after the data file is fully processed, each of the following facts
+		// should be able to be printed out for testing purposes
+		System.out.println("Number of readings: " + next.getNumReadings());
+		System.out.println("Earliest year: " + next.getMinYear());
+		System.out.println("Latest year: " + next.getMaxYear());
+		System.out.println("Most readings per parameter: " 
+				+ next.getMaxReadings());
+		System.out.println("Number of unique sites: " 
+				+ next.getSites().length);
+		System.out.println("Number of unique parameters: " 
+				+ next.getParameters().length);
+		if (first) {
+			System.out.println("Time to first bars: " + firstPaintTime 
+					+ " ms");
 		}
-		return filteredReadings;
+		System.out.println((first ? "Load" : "Reload") + " time: " 
+				+ loadTime + " ms");
 	}
 	
-	// helper method to filter based on the year. Same reasoning as the method
-	// to filter based on site as to why a ReadingGDR[] is an argument
-	private ReadingGDR[] filterReadingsYear(ReadingGDR[] readingInput, int year) {
-		// same loop as before, but counting based on a specific year.
-		int count = 0; 
-		for (int i = 0; i < readingInput.length; i++) {
-			// reminder that you can use == here since you are comparing ints
-			if (readingInput[i].getYear() == year) {
-				count++;
+	// replaces the bars and their labels with one for each parameter name,
+	// all starting with no height
+	private void createBars(String[] foundParameters) {
+		for (int i = 0; i < bars.length; i++) {
+			root.getChildren().remove(parameters[i]);
+			root.getChildren().remove(bars[i]);
+		}
+		
+		// instantiate and initialize the unique parameters
+		parameters = new Label[foundParameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			parameters[i] = new Label(foundParameters[i]);
+		}
+		
+		// instantiate and initialize the bars
+		bars = new Rectangle[parameters.length];
+		shownValues = null;
+		// defining the width outside loop since it does not require
+		// information about any specific index. mousePressed uses it too
+		barWidth = ((double) PLOTSIZE - 
+				(bars.length - 1)*BAR_SPACING)/bars.length;
+		for (int i = 0; i < bars.length; i++) {
+			// initialize the new rectangle object with specific parameters
+			// using the constructor Rectangle(x, y, width, height). the
+			// height is set afterwards by setVisualHeight
+            bars[i] = new Rectangle(BUFFER + (barWidth + BAR_SPACING) * i, 
+					PLOTSIZE + BUFFER, barWidth, 0); 
+			
+            parameters[i].setLayoutX(BUFFER + (barWidth + BAR_SPACING) * i); 
+			// we want the y position to be in the middle of the bottom buffer
+            parameters[i].setLayoutY(PLOTSIZE + BUFFER*1.5);
+			
+			// hidden while one of the canvas charts is showing
+			parameters[i].setVisible(barsShown());
+			bars[i].setVisible(barsShown());
+			
+			root.getChildren().add(parameters[i]);
+			root.getChildren().add(bars[i]);
+        }
+	}
+	
+	// adds a menu item for each parameter
+	private void addParameterItems() {
+		for (int i = 0; i < parameters.length; i++) {
+			MenuItem newItem = new MenuItem(parameters[i].getText());
+			parameterMenu.getItems().add(newItem);
+			newItem.setOnAction(this::parameterAction);
+		}
+	}
+	
+	// makes both canvas charts fill the scene apart from the buffer
+	private void resizeCanvases(Scene scene) {
+		grid.setSize(scene.getWidth() - BUFFER*2, 
+				scene.getHeight() - BUFFER*2);
+		seriesView.setSize(scene.getWidth() - BUFFER*2, 
+				scene.getHeight() - BUFFER*2);
+	}
+	
+	// turns all of the filter controls off or back on
+	private void setControlsDisabled(boolean disabled) {
+		allButton.setDisable(disabled);
+		goodButton.setDisable(disabled);
+		moderateButton.setDisable(disabled);
+		unhealthyButton.setDisable(disabled);
+		siteMenu.setDisable(disabled);
+		yearSelect.setDisable(disabled);
+		followBox.setDisable(disabled);
+		gridBox.setDisable(disabled);
+		seriesBox.setDisable(disabled);
+		parameterMenu.setDisable(disabled);
+		metricMenu.setDisable(disabled);
+		reloadButton.setDisable(disabled);
+	}
+	
+	// adds readings that were appended to the data file while following it
+	// to the newest snapshot, on the builder's thread. only the new rows are
+	// counted, so this takes time in proportion to the number of new lines
+	// rather than the whole file. lines the follower of an earlier load
+	// found after a reload are dropped, since the reload read them too
+	private void append(DatasetSnapshot base, AirDataLoader part) {
+		if (!newest.isSameLoad(base)) {
+			return;
+		}
+		DatasetSnapshot next = newest.withAppended(part);
+		newest = next;
+		Platform.runLater(() -> {
+			publish(next, 0);
+			loadStatus.setText("Following " + filename + ": " 
+					+ next.getNumReadings() + " readings");
+		});
+	}
+	
+	// adds partitions that were read for a query or the time series to the
+	// newest snapshot on the builder's thread, and shows it. their rows are
+	// counted like appended readings. partitions read for an earlier load
+	// are dropped, and ones already added change nothing
+	private void addPartitions(DatasetSnapshot base, 
+			List<PartitionedDataset.Partition> partitions, 
+			AirDataLoader[] parts) {
+		builder.execute(() -> {
+			if (!newest.isSameLoad(base)) {
+				return;
+			}
+			DatasetSnapshot next = newest.withPartitions(partitions, parts);
+			if (next == newest) {
+				return;
+			}
+			newest = next;
+			Platform.runLater(() -> {
+				publish(next, 0);
+				loadStatus.setText("Showing " + next.getNumReadings() 
+						+ " readings, " + partitionStatus(next));
+			});
+		});
+	}
+	
+	// how many of the partitions the snapshot has read, such as "3 of 10
+	// partitions read (152000 readings)"
+	private String partitionStatus(DatasetSnapshot snapshot) {
+		int numPartitions = snapshot.getDataset().getPartitions().size();
+		return (numPartitions - snapshot.missing(null).size()) + " of " 
+				+ numPartitions + " partitions read (" 
+				+ snapshot.getStore().size() + " readings)";
+	}
+	
+	// gives the grid of charts the snapshot's sites and parameters. every
+	// panel is drawn to the same scale, the most readings of one parameter
+	// at one site, so that the scale does not change with the filters
+	private void setGridData(DatasetSnapshot snapshot) {
+		String[] sites = snapshot.getSites();
+		PartitionedDataset dataset = snapshot.getDataset();
+		int scale = 1;
+		for (int s = 0; s < sites.length; s++) {
+			int[] counts = dataset != null 
+					? dataset.countByParameter(CountCube.ALL, s, null)
+					: snapshot.countByParameter(CountCube.ALL, s, 
+					CountCube.ALL);
+			for (int p = 0; p < counts.length; p++) {
+				scale = Math.max(scale, counts[p]);
 			}
 		}
-		// again create a new array for the twice filtered data, looping through
-		// to assign where the year matches
-		ReadingGDR[] filteredReadings = new ReadingGDR[count];
-		int index = 0;
-		for (int i = 0; i < readingInput.length; i++) {
-			if (readingInput[i].getYear() == year) {
-				filteredReadings[index] = readingInput[i];
-				index++;
+		grid.setData(sites, bars.length, scale);
+	}
+	
+	//************************END OF LOADING METHODS***************************
+	
+	//**********************START OF HELPER METHODS****************************
+	
+	// what a filter query worked out, handed back to the JavaFX Application
+	// Thread to be drawn
+	private static class FilterResult {
+		DatasetSnapshot snapshot;	// the data it was worked out from
+		String metric;		// the metric the values are of
+		double[] values;	// the value of each bar
+		double scale;		// the value of a bar that fills the plot
+		int[][] gridCounts;	// the counts of every site, or null
+		Runnable remember;	// caches the counts worked out, or null
+		long filterTime;	// nanoseconds taken to work all of it out
+		// partitions that had to be read first, and their readings. the
+		// query is run again once they have been added
+		List<PartitionedDataset.Partition> partitions;
+		AirDataLoader[] parts;
+	}
+	
+	// works out the bars, and the panels of the grid if it is showing, for
+	// the given filters from the given snapshot. it runs on a query thread,
+	// so it only reads the data and leaves caching any new counts to
+	// showResult. with a directory of partitions, counts over whole
+	// partitions come from the manifest, and anything else first reads the
+	// partitions with readings on the days that the snapshot does not have
+	// yet, which showResult hands on to be added
+	private FilterResult query(DatasetSnapshot snapshot, String description,
+			String site, DateRange dates, String shownMetric, double scale, 
+			boolean gridShown) throws IOException {
+		long start = System.nanoTime();
+		FilterResult result = new FilterResult();
+		result.snapshot = snapshot;
+		result.metric = shownMetric;
+		result.scale = scale;
+		PartitionedDataset dataset = snapshot.getDataset();
+		if (dataset != null && (!dataset.covers(dates) 
+				|| !shownMetric.equals("Count"))) {
+			List<PartitionedDataset.Partition> missing = 
+					snapshot.missing(dates);
+			if (!missing.isEmpty()) {
+				result.partitions = missing;
+				result.parts = dataset.read(missing);
+				result.filterTime = System.nanoTime() - start;
+				return result;
 			}
 		}
-		return filteredReadings;
+		if (shownMetric.equals("Count")) {
+			int[] counts = countReadings(snapshot, description, site, dates, 
+					result);
+			result.values = new double[counts.length];
+			for (int i = 0; i < counts.length; i++) {
+				result.values[i] = counts[i];
+			}
+		} else {
+			result.values = aggregateReadings(snapshot, description, site, 
+					dates, shownMetric);
+		}
+		if (gridShown) {
+			result.gridCounts = countBySite(snapshot, description, dates);
+		}
+		result.filterTime = System.nanoTime() - start;
+		return result;
+	}
+	
+	// helper method to count the readings of each parameter that match a
+	// description, a site and a set of days. the filters used to each build
+	// a new array of the matching readings, but now the counts for every
+	// combination of filters are worked out once when the data is loaded and
+	// read back out of the CountCube, so this does not depend on the number
+	// of readings. "All" as the description or null as the site or days
+	// leaves that filter off. a description or site that is not in the data
+	// gives a code of -1, which matches nothing. days other than a single
+	// whole year are counted from the DateIndex. the counts of recently
+	// shown combinations are kept in countCache, so going back to a view or
+	// clicking one of its bars reuses them. counts that were not cached are
+	// handed to the result to cache once it is shown, so a query that was
+	// superseded never caches counts from data that has since changed. the
+	// returned array may be shared with the cache and must not be changed
+	private int[] countReadings(DatasetSnapshot snapshot, String description, 
+			String site, DateRange dates, FilterResult result) {
+		int descriptionCode = CountCube.ALL;
+		if (!description.equals("All")) {
+			descriptionCode = snapshot.descriptionCode(description);
+		}
+		int siteCode = CountCube.ALL;
+		if (site != null) {
+			siteCode = snapshot.siteCode(site);
+		}
+		PartitionedDataset dataset = snapshot.getDataset();
+		if (dataset != null && dataset.covers(dates)) {
+			return dataset.countByParameter(descriptionCode, siteCode, dates);
+		}
+		if (dates != null && dates.getYear() == CountCube.ALL) {
+			return snapshot.getDateIndex().countByParameter(descriptionCode, 
+					siteCode, dates);
+		}
+		int year = dates == null ? CountCube.ALL : dates.getYear();
+		int[] counts = countCache.get(descriptionCode, siteCode, year);
+		if (counts == null) {
+			int[] found = snapshot.countByParameter(descriptionCode, siteCode, 
+					year);
+			int cachedDescription = descriptionCode;
+			int cachedSite = siteCode;
+			result.remember = () -> countCache.put(cachedDescription, 
+					cachedSite, year, found);
+			counts = found;
+		}
+		return counts;
+	}
+	
+	// helper method to summarize the index values of each parameter's
+	// readings that match a description, a site and a set of days, for the
+	// metrics other than Count. the filters work the same way as in
+	// countReadings, but this goes through the readings that the snapshot's
+	// BitmapIndex (and DateIndex for the days) finds for them rather than a
+	// table. it stops early if the query it is part of is superseded
+	private double[] aggregateReadings(DatasetSnapshot snapshot, 
+			String description, String site, DateRange dates, 
+			String shownMetric) {
+		int descriptionCode = Aggregation.ALL;
+		if (!description.equals("All")) {
+			descriptionCode = snapshot.descriptionCode(description);
+		}
+		int siteCode = Aggregation.ALL;
+		if (site != null) {
+			siteCode = snapshot.siteCode(site);
+		}
+		// a single whole year is a filter of the index like the others, so
+		// only other sets of days are checked reading by reading
+		int year = Aggregation.ALL;
+		if (dates != null && dates.getYear() != Aggregation.ALL) {
+			year = dates.getYear();
+			dates = null;
+		}
+		Aggregation aggregation = new Aggregation(snapshot.getStore(), 
+				snapshot.getBitmapIndex(), 
+				dates == null ? null : snapshot.getDateIndex(), 
+				snapshot.getMinYear(), snapshot.getMaxYear(), 
+				snapshot.getMaxIndexValue(), Aggregation.PARAMETER, 
+				descriptionCode, siteCode, year, dates);
+		
+		// the groups are the parameter codes, which are the bar indexes
+		double[] values = new double[aggregation.getNumGroups()];
+		for (int i = 0; i < values.length; i++) {
+			if (shownMetric.equals("Mean")) {
+				values[i] = aggregation.getMean(i);
+			} else if (shownMetric.equals("Max")) {
+				values[i] = aggregation.getMax(i);
+			} else {
+				values[i] = aggregation.getPercentile(i, 0.95);
+			}
+		}
+		return values;
+	}
+	
+	// the counts of every site for the description and days, for the panels
+	// of the grid
+	private int[][] countBySite(DatasetSnapshot snapshot, String description,
+			DateRange dates) {
+		int descriptionCode = CountCube.ALL;
+		if (!description.equals("All")) {
+			descriptionCode = snapshot.descriptionCode(description);
+		}
+		PartitionedDataset dataset = snapshot.getDataset();
+		if (dataset != null && dataset.covers(dates)) {
+			return dataset.countBySite(descriptionCode, dates);
+		}
+		if (dates != null && dates.getYear() == CountCube.ALL) {
+			return snapshot.getDateIndex().countBySite(descriptionCode, dates);
+		}
+		int year = dates == null ? CountCube.ALL : dates.getYear();
+		int numSites = snapshot.getSites().length;
+		int[][] counts = new int[numSites][];
+		for (int s = 0; s < numSites; s++) {
+			counts[s] = snapshot.countByParameter(descriptionCode, s, year);
+		}
+		return counts;
 	}
 	
 	// helper method to set the height of the bars. I originally was going to
 	// follow the suggestion of the document and name it setHeights, but I
 	// wanted to make it more explicit since the Rectangle class has a setHeight
-	// method and could potentially be confused. One additional note is that I
-	// decided to design it to take the whole array of ReadingGDR objects rather
-	// than just an int[], This was to avoid some redundancy since calculating
-	// the counts would be necessary for everything, so my choices were
-	// 1) incorporate it in each helper method
-	// 2) create a specific countInstances helper method
-	// 3) incorporate it here
-	// since I would always want to use that code alongside this method, I
-	// chose to incorporate it here for easier readability
-	private void setVisualHeight(ReadingGDR[] readingSet) {
-		// loop through the input array to count the number of instances for 
-		// each parameter. this requires a nested loop: one to loop through 
-		// each parameter, and one to loop through the full filtered array
-		// of ReadingGDR objects. It then increments the counter for that
-		// specific parameter
-		int[] filteredCounts = new int[parameters.length];
-		for (int i = 0; i < readingSet.length; i++) {
-			for (int j = 0; j < parameters.length; j++) {
-				if (readingSet[i].getParameter().equals(
-						parameters[j].getText())) {
-					filteredCounts[j]++;
-				}
-			}
+	// method and could potentially be confused. It takes the number of
+	// readings of each parameter, in the same order as the bars, and the
+	// number of readings of a bar that fills the plot.
+	private void setVisualHeight(int[] filteredCounts, double scale) {
+		double[] values = new double[filteredCounts.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = filteredCounts[i];
 		}
+		shownValues = values;
+		shownValuesMetric = "Count";
+		setVisualHeight(values, scale);
+	}
+	
+	// the same for any metric, where a bar of the given scale fills the
+	// height of the plot.
+	private void setVisualHeight(double[] values, double scale) {
 		// loop through the parameters and set the heights and the y position
 		for (int i = 0; i < parameters.length; i++) {
-			double barHeight = (filteredCounts[i] / 
-					(double) maxReadings) * (PLOTSIZE); 
+			double barHeight = (values[i] / Math.max(1, scale)) * (PLOTSIZE); 
 			bars[i].setHeight(barHeight);
 			bars[i].setY(PLOTSIZE + BUFFER - barHeight); 
 		} 
 	}
 	
+	// works out the bars for the description, site and days filters that
+	// are currently active, showing the active metric, and the panels of the
+	// grid if it is showing. the work is done on a query thread, which
+	// supersedes any query still running for filters chosen before, and
+	// showResult draws it once it is done. the metrics other than Count are
+	// drawn against the highest index value in the file so bars can be
+	// compared between filters
+	private void refresh() {
+		DatasetSnapshot current = data.get();
+		if (current == null) {
+			return;
+		}
+		RadioButton selectedRadioButton = (RadioButton) 
+				qualitySelect.getSelectedToggle();
+		String description = selectedRadioButton.getText();
+		// the query thread gets its own copy of everything that can change,
+		// and the snapshot, which cannot
+		String site = activeSite;
+		DateRange dates = activeDates;
+		String shownMetric = metric;
+		double scale = metric.equals("Count") ? current.getMaxReadings() 
+				: current.getMaxIndexValue();
+		boolean gridShown = gridBox.isSelected();
+		queries.submit(() -> query(current, description, site, dates, 
+				shownMetric, scale, gridShown), this::showResult, 
+				e -> System.out.println(e));
+	}
+	
+	// draws the result of the newest query. it is timed like the handlers,
+	// with the time the query took on its own thread as the filter time.
+	// partitions it read are added to a new snapshot, whose publish runs
+	// the query again
+	private void showResult(FilterResult result) {
+		DashboardStats.beginInteraction("showResult");
+		DashboardStats.addFilterTime(result.filterTime);
+		long start = System.nanoTime();
+		if (result.parts != null) {
+			loadStatus.setText("Adding " + result.parts.length 
+					+ " partitions...");
+			addPartitions(result.snapshot, result.partitions, result.parts);
+			DashboardStats.endInteraction();
+			return;
+		}
+		// publish runs a new query after every swap, so this is only a
+		// safeguard against drawing counts from a snapshot no longer shown
+		if (result.snapshot != data.get()) {
+			DashboardStats.endInteraction();
+			return;
+		}
+		if (result.remember != null) {
+			result.remember.run();
+		}
+		// kept so a click on a bar shows the number that bar was drawn from
+		shownValues = result.values;
+		shownValuesMetric = result.metric;
+		setVisualHeight(result.values, result.scale);
+		// panels whose counts did not change are not drawn again
+		if (result.gridCounts != null) {
+			for (int s = 0; s < result.gridCounts.length; s++) {
+				grid.setCounts(s, result.gridCounts[s]);
+			}
+		}
+		DashboardStats.addBarUpdateTime(System.nanoTime() - start);
+		DashboardStats.endInteraction();
+	}
+	
+	// builds the time series of the active site and parameter (or the first
+	// of each if none has been chosen) from the store and shows it. the
+	// series is only built while it is showing
+	private void refreshSeries() {
+		DatasetSnapshot current = data.get();
+		if (!seriesBox.isSelected() || current == null 
+				|| current.getSites().length == 0 || parameters.length == 0) {
+			return;
+		}
+		// the series covers every day, so with a directory every partition
+		// has to be read first. publishing them shows the series
+		List<PartitionedDataset.Partition> missing = current.missing(null);
+		if (!missing.isEmpty()) {
+			loadStatus.setText("Reading " + missing.size() 
+					+ " partitions for the time series...");
+			partitionReads.submit(() -> current.getDataset().read(missing), 
+					parts -> addPartitions(current, missing, parts), 
+					e -> System.out.println(e));
+			return;
+		}
+		String site = activeSite == null ? current.getSites()[0] : activeSite;
+		String parameter = activeParameter == null ? parameters[0].getText()
+				: activeParameter;
+		seriesView.setSeries(TimeSeries.of(current.getStore(), 
+				current.siteCode(site), current.parameterCode(parameter)), 
+				site + " " + parameter + " index value");
+	}
+	
+	// the text of the showing label for the active filters, such as
+	// "Good Avalon 2019-2022 Readings"
+	private String showingText() {
+		RadioButton selectedRadioButton = (RadioButton) 
+				qualitySelect.getSelectedToggle();
+		return selectedRadioButton.getText() 
+				+ (activeSite == null ? "" : " " + activeSite)
+				+ (activeDates == null ? "" : " " + activeDates) + " Readings";
+	}
+	
+	// true when neither canvas chart is showing, so the bars are
+	private boolean barsShown() {
+		return !gridBox.isSelected() && !seriesBox.isSelected();
+	}
+	
+	// shows whichever chart the check boxes ask for and hides the others
+	private void showChart() {
+		grid.getCanvas().setVisible(gridBox.isSelected());
+		seriesView.getCanvas().setVisible(seriesBox.isSelected());
+		for (int i = 0; i < bars.length; i++) {
+			bars[i].setVisible(barsShown());
+			parameters[i].setVisible(barsShown());
+		}
+		details.setText("");
+	}
+	
 	//************************END OF HELPER METHODS****************************
 	
 	// this is a single event handler for all of the radio buttons. I spent some
@@ -467,6 +995,7 @@ public class AirQualityGDR extends Application {
 	// having an event handler for each radio button, I could just extract which
 	// radio button was active and filter based on that.
 	private void radioAction(ActionEvent event) {
+		DashboardStats.beginInteraction("radioAction");
 		// find the active radio button
 		RadioButton selectedRadioButton = (RadioButton) 
 				qualitySelect.getSelectedToggle();
@@ -474,14 +1003,11 @@ public class AirQualityGDR extends Application {
 		
 		// filter the data based on the active button and set the new heights
 		// for the bars. 
-		if (!activeButton.equals("All")) {
-			ReadingGDR[] filteredReadings = filterReadingsDesc(activeButton);
-			showing.setText(selectedRadioButton.getText() + " Readings");
-			setVisualHeight(filteredReadings);
-		} else {
-			showing.setText("All Readings");
-			setVisualHeight(readings);
-		}
+		showing.setText(activeButton + " Readings");
+		activeSite = null;
+		activeDates = null;
+		setYearText("");
+		refresh();
 		
 		// removes the details text. could use an if statement, but it
 		// would either have to evaluate the if statement as true and then
@@ -489,144 +1015,255 @@ public class AirQualityGDR extends Application {
 		// setting it as nothing if it is already nothing. This will be included
 		// in the subsequent event handlers
 		details.setText("");
+		DashboardStats.endInteraction();
 	}
 	
 	// this is the event handler for the site dropdown. it is designed in a
 	// similar way to the radio buttons so that it utilizes the ToggleGroup
 	// to determine how to filter the data and set the showing text
 	private void siteAction(ActionEvent event) {
+		DashboardStats.beginInteraction("siteAction");
 		// called when a MenuItem is selected
 		// the following line checks which MenuItem was selected out of the menu
 		String selection = ((MenuItem)(event.getSource())).getText();
-		ReadingGDR[] filteredReadings = readings; // Start with all readings
-		
-		// check which filter is currently active
-		RadioButton selectedRadioButton = (RadioButton) 
-				qualitySelect.getSelectedToggle();
-		String activeButton = selectedRadioButton.getText();
-		
-		// filter the data based on the description first and set the 
-		// showing text to be "(description) (site) Readings"
-		if (!activeButton.equals("All")) {
-			filteredReadings = filterReadingsDesc(activeButton);
-			showing.setText(selectedRadioButton.getText() + " " 
-					+ selection + " Readings");
-		} else {
-			showing.setText(selectedRadioButton.getText() + " " 
-					+ selection + " Readings");
-		}
 		
-		
-		// Filter readings by site based on the data filtered by description
-		filteredReadings = filterReadingsSite(filteredReadings, selection); 
-		// Update the visualization
-		setVisualHeight(filteredReadings);
+		// Filter readings by the description, the site and any days that
+		// were typed in together and update the visualization
+		activeSite = selection;
+		showing.setText(showingText());
+		refresh();
+		refreshSeries();
 		details.setText("");
+		DashboardStats.endInteraction();
 	}
 	
-	// event handler for the year text field. it is also designed to utilize
-	// the ToggleGroup to determine how to filter. It uses a try-catch block
-	// to make sure that 1) the input is an integer, and 2) it is within range
-	// of the data. I chose a try-catch block so that it could easily 
-	// clear the text box and not throw an error when a non-integer was input.
+	// event handler for the year text field, for Enter. it is also designed
+	// to utilize the ToggleGroup to determine how to filter. Besides a
+	// single year it takes a range of years, months or a season, the last N
+	// days or a window of days (see DateRange), which are combined with the
+	// active description and site. An empty field turns the days filter
+	// back off. The same happens on its own once typing pauses (yearTyped).
 	private void yearAction(ActionEvent event) {
+		DashboardStats.beginInteraction("yearAction");
+		typingPause.stop();
+		applyYear(true);
+		DashboardStats.endInteraction();
+	}
+	
+	// called when typing in the year field has paused for TYPING_PAUSE ms
+	private void yearTyped(ActionEvent event) {
+		DashboardStats.beginInteraction("yearTyped");
+		applyYear(false);
+		DashboardStats.endInteraction();
+	}
+	
+	// filters by the days in the year field. It uses a try-catch block so
+	// that text that is not understood or has no readings in it does not
+	// throw an error. While typing that is expected, so the field is left
+	// alone, but text that was entered is put back to the days being shown.
+	private void applyYear(boolean entered) {
 		String yearString = yearSelect.getText();
-		ReadingGDR[] filteredReadings = readings;
-		details.setText("");
+		DatasetSnapshot current = data.get();
+		DateRange dates = null;
 		try {
-			int yearSelected = Integer.parseInt(yearString);
-			
-			// check if the input is in range
-			if (yearSelected >= minYear && yearSelected <= maxYear) {
-				
-				// check which description filter is currently active
-				RadioButton selectedRadioButton = (RadioButton) 
-						qualitySelect.getSelectedToggle();
-				String activeButton = selectedRadioButton.getText();
-				
-				// filter by description based on the active radio button
-				// and change the showing text
-				if (!activeButton.equals("All")) {
-					filteredReadings = filterReadingsDesc(activeButton);
-					showing.setText(selectedRadioButton.getText() + " " 
-							+ yearSelected + " Readings");
-				} else {
-					showing.setText(
-							selectedRadioButton.getText() + " " 
-							+ yearSelected + " Readings");
-				}
-				
-				// Filter readings by year
-				filteredReadings = filterReadingsYear(filteredReadings, 
-						yearSelected);
-				// Update the visualization
-				setVisualHeight(filteredReadings);
+			if (!yearString.trim().isEmpty()) {
+				dates = DateRange.parse(yearString, current.getFirstDay(), 
+						current.getLastDay());
 			}
-		} catch (Exception e) {}; 
-		// clear the field 
-		yearSelect.setText("");
+		} catch (RuntimeException e) {
+			if (entered) {
+				setYearText(activeDates == null ? "" : activeDates.toString());
+			}
+			return;
+		}
+		// Enter after the same days were shown while typing changes nothing
+		if (String.valueOf(dates).equals(String.valueOf(activeDates))) {
+			return;
+		}
+		
+		// Filter readings by the description, the site and the days
+		// together and update the visualization
+		activeDates = dates;
+		details.setText("");
+		showing.setText(showingText());
+		refresh();
+	}
+	
+	// changes the year field without it being applied as if it was typed
+	private void setYearText(String text) {
+		typingPause.stop();
+		settingYear = true;
+		yearSelect.setText(text);
+		settingYear = false;
+	}
+	
+	// event handler for the follow check box, which starts or stops reading
+	// lines appended to the data file
+	private void followAction(ActionEvent event) {
+		long numReadings = data.get().getNumReadings();
+		if (followBox.isSelected()) {
+			follower.start();
+			loadStatus.setText("Following " + filename + ": " + numReadings 
+					+ " readings");
+		} else {
+			follower.stop();
+			loadStatus.setText("Stopped following " + filename + " at " 
+					+ numReadings + " readings");
+		}
+	}
+	
+	// event handler for the reload button, which loads all of the data
+	// again in the background and shows it once it is ready
+	private void reloadAction(ActionEvent event) {
+		loadStatus.setText("Reloading " + filename + "...");
+		reload();
+	}
+	
+	// called when the watcher sees the data change, with the new size of
+	// the data file. lines added to a file that is being followed are left
+	// to the follower, and any other change reloads all of the data
+	private void fileChanged(long size) {
+		DatasetSnapshot current = data.get();
+		if (follower != null && follower.isFollowing() 
+				&& size >= current.getEndOffset()) {
+			return;
+		}
+		loadStatus.setText(filename + " changed, reloading...");
+		reload();
+	}
+	
+	// event handler for the grid check box, which swaps the single chart
+	// for the grid of charts by site or back. the grid shows the active
+	// description and year, since every site already has its own panel
+	private void gridAction(ActionEvent event) {
+		if (gridBox.isSelected()) {
+			seriesBox.setSelected(false);
+		}
+		showChart();
+		if (gridBox.isSelected()) {
+			refresh();
+		}
 	}
 	
+	// event handler for the time series check box, which swaps the chart
+	// for the index values of the active site and parameter over time
+	private void seriesAction(ActionEvent event) {
+		if (seriesBox.isSelected()) {
+			gridBox.setSelected(false);
+		}
+		showChart();
+		refreshSeries();
+	}
+	
+	// event handler for the metric dropdown, which changes what the bars
+	// show without changing the filters. the bars and their details keep
+	// the old metric until the query for the new one has been drawn
+	private void metricAction(ActionEvent event) {
+		metric = ((MenuItem)(event.getSource())).getText();
+		metricMenu.setText(metric);
+		refresh();
+		details.setText("");
+	}
+	
+	// event handler for the parameter dropdown, which picks the parameter
+	// shown over time
+	private void parameterAction(ActionEvent event) {
+		activeParameter = ((MenuItem)(event.getSource())).getText();
+		parameterMenu.setText(activeParameter);
+		refreshSeries();
+	}
+	
+	// event handler for clicks in the window. the bar under the click is
+	// found with arithmetic instead of checking every bar, and its count is
+	// the one it was drawn from, so it always matches the bar and every
+	// active filter and costs the same however many bars there are
 	private void mousePressed(MouseEvent event) {
-        // get the x and y coordinate of the mouse click
-        double pressX = event.getX();
-		double pressY = event.getY();
-		
-		ReadingGDR[] filteredReadings = readings;
-		
-		// check which description filter is currently active
-		RadioButton selectedRadioButton = (RadioButton) 
-				qualitySelect.getSelectedToggle();
-		String activeButton = selectedRadioButton.getText();
+		DashboardStats.beginInteraction("mousePressed");
+		try {
+			// nothing has been drawn yet
+			if (shownValues == null) {
+				return;
+			}
+			if (gridBox.isSelected()) {
+				gridPressed(event);
+				return;
+			}
+			// the time series handles its own clicks for panning
+			if (seriesBox.isSelected()) {
+				return;
+			}
 		
-		// filter the data based on description
-		if (!activeButton.equals("All")) {
-			filteredReadings = filterReadingsDesc(activeButton);
-		}
+	        // get the x and y coordinate of the mouse click
+	        double pressX = event.getX();
+			double pressY = event.getY();
 		
-		// I am aware there should be a check to filter by site and year, but
-		// I was unable to achieve this properly without a lot of bad design
-		// choices such as lots of string manipulation to check the showing text
-		// to see if it contained integers since the text field gets cleared
-        
-		// calculate the width of each bar
-        double barWidth = ((double) PLOTSIZE - 
-				(bars.length - 1) * 5) / bars.length;
-        // find the index of the clicked bar, setting it outside the range
-		// and checking if the x and y coordinates of the click correspond
-		// to pixels within a bar and determines what bar
-        int clickedBarIndex = -1; 
-        for (int i = 0; i < bars.length; i++) {
-            double barStartX = BUFFER + (barWidth + 5) * i;
-            double barEndX = barStartX + barWidth; 
-			double barY = PLOTSIZE + BUFFER - bars[i].getHeight(); 
-			double barTopY = PLOTSIZE + BUFFER;
-            if (pressX >= barStartX && pressX <= barEndX 
-				&& pressY >= barY && pressY <= barTopY) {
-				clickedBarIndex = i;
+			// the bar whose slot (the bar and the gap after it) holds the click,
+			// and whether the click is on the bar rather than in the gap or
+			// above its top
+	        int clickedBarIndex = (int) Math.floor((pressX - BUFFER) 
+					/ (barWidth + BAR_SPACING));
+			if (clickedBarIndex >= 0 && clickedBarIndex < bars.length) {
+				double barStartX = BUFFER + (barWidth + BAR_SPACING) 
+						* clickedBarIndex;
+				double barY = PLOTSIZE + BUFFER - bars[clickedBarIndex].getHeight(); 
+				double barTopY = PLOTSIZE + BUFFER;
+				if (pressX > barStartX + barWidth || pressY < barY 
+						|| pressY > barTopY) {
+					clickedBarIndex = -1;
+				}
+			} else {
+				clickedBarIndex = -1;
 			}
-        }
 
-        // update the details label
-        if (clickedBarIndex != -1) {
-            // calculate the count for the clicked parameter bar
-            int clickedBarCount = 0;
-			// loop through the filtered array to count the instances
-			// of that parameter
-            for (int i = 0; i < filteredReadings.length; i++) {
-                if (filteredReadings[i].getParameter().equals(
-						parameters[clickedBarIndex].getText())) {
-                    clickedBarCount++;
-                }
-            }
-            details.setText("Readings for " 
-					+ parameters[clickedBarIndex].getText() 
-					+ ": " + clickedBarCount);
-        } else {
-            details.setText(""); 
-        }
+	        // update the details label
+	        if (clickedBarIndex != -1) {
+	            details.setText(barDetails(clickedBarIndex));
+	        } else {
+	            details.setText(""); 
+	        }
+		} finally {
+			DashboardStats.endInteraction();
+		}
     }
 	
+	// the text shown for a clicked bar, such as "Readings for SO2: 2113" or
+	// "Mean for SO2: 4.2"
+	private String barDetails(int bar) {
+		double value = shownValues[bar];
+		String name = parameters[bar].getText();
+		if (shownValuesMetric.equals("Count")) {
+			return "Readings for " + name + ": " + (long) value;
+		}
+		if (shownValuesMetric.equals("Mean")) {
+			return "Mean for " + name + ": " + Math.round(value * 10) / 10.0;
+		}
+		return shownValuesMetric + " for " + name + ": " + (long) value;
+	}
+	
+	// shows the count of the bar clicked in the grid, which the grid finds
+	// the same way as mousePressed
+	private void gridPressed(MouseEvent event) {
+		int[] bar = grid.barAt(event.getX() - BUFFER, event.getY() - BUFFER);
+		if (bar == null) {
+			details.setText("");
+			return;
+		}
+		details.setText("Readings for " + data.get().getSites()[bar[0]] + " " 
+				+ parameters[bar[1]].getText() + ": " 
+				+ grid.getCounts(bar[0])[bar[1]]);
+	}
+	
+	// reports how much repeated counting the cache saved, how many queries
+	// were superseded and how long the handlers took when the window is
+	// closed
+	public void stop() {
+		System.out.println("Filter cache: " + countCache);
+		System.out.println("Filter queries: " + queries);
+		for (String line : DashboardStats.get().getInteractionPercentiles()) {
+			System.out.println(line);
+		}
+	}
+	
     public static void main(String[] args)
     {
         launch(args);
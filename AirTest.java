@@ -1,5 +1,5 @@
-import java.util.Scanner;
 import java.io.*;
+import java.util.Arrays;
 
 public class AirTest {
 	// filename in current directory to use as data source
@@ -10,137 +10,105 @@ public class AirTest {
 	// private final String filename = "airQualityVeryLarge.txt";
 	// private final String filename = "airQualityFull.txt";
 	
+	// usage: java AirTest [--stats] [filename] [parallelism]
+	// with --stats the readings are only counted as the file streams past,
+	// and summarized by site and by year, so memory stays the same size
+	// however big the file is (a small fixed -Xmx is enough)
 	public static void main(String[] args) {
+		boolean statisticsOnly = args.length > 0 && args[0].equals("--stats");
+		if (statisticsOnly) {
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
 
 		String filename = "airQualitySynthetic.txt";
-		// TODO: add any initialization needed before first scan of data file
-		int numReadings = 0;
-		int minYear = 10000;
-		int maxYear = 0;
+		if (args.length > 0) {
+			filename = args[0];
+		}
+		// number of threads that parse the file at the same time
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		if (args.length > 1) {
+			parallelism = Integer.parseInt(args[1]);
+		}
 		
-		String[] foundSites = new String[100];
-		int numSites = 0;
-		
-		String[] foundParameters = new String[100];
-		int numParameters = 0;
-		int[] countParameters = new int[100];
-
-		// try-catch block for first pass through reading the data file
+		// a single pass over the file, split between the parallel workers,
+		// collects the readings along with the year bounds and the unique
+		// sites and parameters (with the number of readings of each)
+		AirDataLoader loader = new AirDataLoader();
+		loader.setStatisticsOnly(statisticsOnly);
+		long loadStart = System.nanoTime();
 		try {
-			Scanner filescan = new Scanner(new File(filename));		
-			filescan.useDelimiter("\\t|\\n");
-			
-			// skip header
-			filescan.nextLine();
-			
-			while(filescan.hasNext()) {
-				
-				filescan.next();
-				String yearString = filescan.next();
-				String site = filescan.next();
-				String parameter = filescan.next();
-				filescan.next();
-				filescan.next();
-				filescan.next();
-				filescan.next();
-				
-				//update the number of readings
-				numReadings++;
-				
-				//extract year from the second field
-				int year = Integer.parseInt(yearString.substring(yearString.lastIndexOf("/")+1));
-				minYear = Math.min(minYear, year);
-				maxYear = Math.max(maxYear, year);
-				
-				boolean foundSite = false;
-                for (int i = 0; i < foundSites.length; i++) {
-                    if (foundSites[i] != null && foundSites[i].equals(site)) {
-                        foundSite = true;
-                    }
-                }
-                if (!foundSite) {
-                    foundSites[numSites] = site;
-                    numSites++;
-                }
-				
-				boolean foundParameter = false;
-                for (int i = 0; i < foundParameters.length; i++) {
-                    if (foundParameters[i] != null && foundParameters[i].equals(parameter)) {
-                        foundParameter = true;
-                        countParameters[i]++;
-                    }
-                }
-                if (!foundParameter) {
-                    foundParameters[numParameters] = parameter;
-                    countParameters[numParameters] = 1; 
-                    numParameters++;
-				}
-				
-			}
-
-			// add code here to iterate over file named by "filename"
-
+			loader.loadParallel(filename, parallelism);
 		} catch (IOException e) {System.out.println(e);};
+		long loadTime = (System.nanoTime() - loadStart) / 1000000;
 		
+		if (statisticsOnly) {
+			printStatistics(loader, new File(filename).length(), loadTime, 
+					parallelism);
+			return;
+		}
+		
+		int[] countParameters = loader.getParameterCounts();
 		int maxCount = 0;
-        int maxCountIndex = 0;
-        for (int i = 0; i < numParameters; i++) {
+        for (int i = 0; i < countParameters.length; i++) {
             if (countParameters[i] > maxCount) {
                 maxCount = countParameters[i];
-                maxCountIndex = i;
             }
         }
 		
-		// after the first pass over the data file is fully processed, each
-		// of the following facts should be able to be printed out for
-		// testing purposes
-		System.out.println("Number of readings: " + numReadings);
-		System.out.println("Earliest year: " + minYear);
-		System.out.println("Latest year: " + maxYear);
-		System.out.println("Most readings per parameter: " + countParameters[maxCountIndex]);
-		System.out.println("Number of unique sites: " + numSites);
-		System.out.println("Number of unique parameters: " + numParameters);
-		
-		// instantiate the array of readings from the number of readings
-		ReadingGDR[] readings = new ReadingGDR[numReadings];
+		// after the data file is fully processed, each of the following
+		// facts should be able to be printed out for testing purposes
+		System.out.println("Number of readings: " + loader.getNumReadings());
+		System.out.println("Earliest year: " + loader.getMinYear());
+		System.out.println("Latest year: " + loader.getMaxYear());
+		System.out.println("Most readings per parameter: " + maxCount);
+		System.out.println("Number of unique sites: " 
+				+ loader.getSites().length);
+		System.out.println("Number of unique parameters: " 
+				+ countParameters.length);
+		System.out.println("Load time: " + loadTime + " ms with " 
+				+ parallelism + " workers");
+	}
+	
+	// prints the same facts as main from the counts of a statistics only
+	// load, then the readings and average index value of every site and
+	// every year, and how fast the file was read
+	private static void printStatistics(AirDataLoader loader, long fileSize,
+			long loadTime, int parallelism) {
+		ReadingStatistics statistics = loader.getStatistics();
+		String[] sites = loader.getSites();
+		String[] parameters = loader.getParameters();
+		long maxCount = 0;
+		for (int i = 0; i < parameters.length; i++) {
+			maxCount = Math.max(maxCount, statistics.getParameterReadings(i));
+		}
 		
+		System.out.println("Number of readings: " 
+				+ statistics.getNumReadings());
+		System.out.println("Earliest year: " + loader.getMinYear());
+		System.out.println("Latest year: " + loader.getMaxYear());
+		System.out.println("Most readings per parameter: " + maxCount);
+		System.out.println("Number of unique sites: " + sites.length);
+		System.out.println("Number of unique parameters: " 
+				+ parameters.length);
 		
-		// try-catch block for second pass through the file
-		try {
-			Scanner filescan = new Scanner(new File(filename));		
-			filescan.useDelimiter("\\t|\\n");
-			
-			filescan.nextLine();
-			
-			//used to tell where to input a new reading
-			int index = 0;
-			//QUESTION: should I change this to a for loop since I now know
-			//the number of iterations? I assume yes.
-			while(filescan.hasNext()) {
-				String line = filescan.nextLine();
-				
-				int id = filescan.nextInt();
-				String date = filescan.next();
-				String site = filescan.next();
-				String parameter = filescan.next();
-				int indexValue = filescan.nextInt();
-				String description = filescan.next();
-				String healthAdvisory = filescan.next();
-				String healthEffects = filescan.next();
-				
-				// Create a ReadingXXX object and populate its fields
-				ReadingGDR reading = new ReadingGDR(id, date, site, parameter, 
-						indexValue, description, healthAdvisory, healthEffects);
-				readings[index] = reading;
-				//update the index for the next iteration
-				index++;
-				
-			}
-			
-		} catch (IOException e) {System.out.println(e);};
+		System.out.println("Readings by site:");
+		for (int i = 0; i < sites.length; i++) {
+			System.out.println(String.format("  %-24s %12d   mean index %.1f",
+					sites[i], statistics.getSiteReadings(i), 
+					statistics.getSiteMean(i)));
+		}
+		System.out.println("Readings by year:");
+		for (int year = loader.getMinYear(); year <= loader.getMaxYear(); 
+				year++) {
+			System.out.println(String.format("  %-24d %12d   mean index %.1f",
+					year, statistics.getYearReadings(year), 
+					statistics.getYearMean(year)));
+		}
 		
+		double megabytes = fileSize / 1e6;
+		double seconds = Math.max(1, loadTime) / 1000.0;
+		System.out.println(String.format(
+				"Read %.1f MB in %.1f s (%.1f MB/s) with %d workers", 
+				megabytes, seconds, megabytes / seconds, parallelism));
 	}
-	
-	
-	
-}
\ No newline at end of file
+}
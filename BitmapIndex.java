@@ -0,0 +1,130 @@
+// BitmapIndex		Author: Garrett Reihner
+//
+// Bitmap indexes over a ReadingStore. For every distinct description, site,
+// year and parameter there is one bitset with a bit set for each row that
+// has that value. Combining filters is then a word-by-word AND of the
+// matching bitsets, and the readings of each parameter are counted with a
+// popcount, so no filtered arrays ever have to be built. Aggregation
+// goes through the rows of the ANDed bitset (see matching) instead of
+// every row of the store, which is how the window finds the readings
+// behind the metrics other than Count.
+
+public class BitmapIndex {
+	// pass ALL in place of a code to leave that filter off. it is kept well
+	// away from -1 so that a name that was never seen still matches nothing
+	public static final int ALL = Integer.MIN_VALUE;
+	// marker returned by bitset for a filter that is switched off
+	private static final long[] ALL_ROWS = new long[0];
+
+	private final int numRows;	// number of readings covered by the index
+	private final int numWords;	// number of longs in every bitset
+	private final int minYear;	// year that maps to bitset 0 of byYear
+
+	// one bitset per code of each column, for example bySite[3] has a bit
+	// set for each reading taken at the site with code 3
+	private final long[][] byDescription;
+	private final long[][] bySite;
+	private final long[][] byYear;
+	private final long[][] byParameter;
+
+	// builds all of the bitsets in a single pass over the store
+	public BitmapIndex(ReadingStore store, int minYear, int maxYear) {
+		numRows = store.size();
+		numWords = (numRows + 63) >>> 6;
+		this.minYear = minYear;
+		byDescription = new long[store.getDescriptions().size()][numWords];
+		bySite = new long[store.getSites().size()][numWords];
+		byYear = new long[Math.max(0, maxYear - minYear + 1)][numWords];
+		byParameter = new long[store.getParameters().size()][numWords];
+
+		for (int row = 0; row < numRows; row++) {
+			int word = row >>> 6;
+			long bit = 1L << row;	// shifts only use the low 6 bits
+			byDescription[store.getDescriptionCode(row)][word] |= bit;
+			bySite[store.getSiteCode(row)][word] |= bit;
+			byYear[store.getYear(row) - minYear][word] |= bit;
+			byParameter[store.getParameterCode(row)][word] |= bit;
+		}
+	}
+
+	// counts the readings of each parameter that match every filter. each
+	// argument is a code (or a year) to filter on, or ALL to skip it. a
+	// code that is out of range matches nothing
+	public int[] countByParameter(int descriptionCode, int siteCode, int year) {
+		int[] counts = new int[byParameter.length];
+		long[] description = bitset(byDescription, descriptionCode);
+		long[] site = bitset(bySite, siteCode);
+		long[] yearBits = bitset(byYear, year == ALL ? ALL : year - minYear);
+		if (description == null || site == null || yearBits == null) {
+			return counts;
+		}
+
+		for (int word = 0; word < numWords; word++) {
+			// start with every row in this word and AND in each active filter
+			long match = -1L;
+			if (description != ALL_ROWS) {
+				match &= description[word];
+			}
+			if (site != ALL_ROWS) {
+				match &= site[word];
+			}
+			if (yearBits != ALL_ROWS) {
+				match &= yearBits[word];
+			}
+			if (match == 0) {
+				continue;
+			}
+			for (int p = 0; p < byParameter.length; p++) {
+				counts[p] += Long.bitCount(match & byParameter[p][word]);
+			}
+		}
+		return counts;
+	}
+
+	// a bitset with a bit set for each row that matches every filter, in
+	// the same layout as the index (bit row & 63 of word row >>> 6). the
+	// arguments are the same as for countByParameter
+	public long[] matching(int descriptionCode, int siteCode, int year) {
+		long[] match = new long[numWords];
+		long[] description = bitset(byDescription, descriptionCode);
+		long[] site = bitset(bySite, siteCode);
+		long[] yearBits = bitset(byYear, year == ALL ? ALL : year - minYear);
+		if (description == null || site == null || yearBits == null) {
+			return match;
+		}
+		for (int word = 0; word < numWords; word++) {
+			long bits = -1L;
+			if (description != ALL_ROWS) {
+				bits &= description[word];
+			}
+			if (site != ALL_ROWS) {
+				bits &= site[word];
+			}
+			if (yearBits != ALL_ROWS) {
+				bits &= yearBits[word];
+			}
+			match[word] = bits;
+		}
+		// with every filter off the last word would have rows past the end
+		if ((numRows & 63) != 0) {
+			match[numWords - 1] &= (1L << numRows) - 1;
+		}
+		return match;
+	}
+
+	// the bitset for a code, ALL_ROWS for ALL, or null when the code is not
+	// one that appears in the data
+	private static long[] bitset(long[][] bitsets, int code) {
+		if (code == ALL) {
+			return ALL_ROWS;
+		}
+		if (code < 0 || code >= bitsets.length) {
+			return null;
+		}
+		return bitsets[code];
+	}
+
+	public int size() {
+		return numRows;
+	}
+}
@@ -0,0 +1,118 @@
+// CountCache		Author: Garrett Reihner
+//
+// Keeps the per-parameter counts of the filter combinations that were shown
+// most recently, keyed by description, site and year code, so flipping back
+// to a view (or clicking one of its bars) reuses the counts instead of
+// working them out again. It holds at most a fixed number of combinations
+// and drops the least recently used one to make room for a new one. It
+// counts its hits, misses and evictions so the amount of repeated work it
+// saves can be seen. The window's filter queries read it on their own
+// threads while the JavaFX Application Thread adds to it, so every method
+// holds the cache's lock.
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CountCache {
+	private final int capacity;	// most combinations kept at once
+	private final LinkedHashMap<Key, int[]> entries;
+
+	private long hits;		// lookups answered from the cache
+	private long misses;	// lookups that were not in it
+	private long evictions;	// combinations dropped to make room
+
+	public CountCache(int capacity) {
+		this.capacity = capacity;
+		// access order keeps the least recently used entry first
+		entries = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+				if (size() > CountCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	// the counts stored for the filters, or null if they are not cached.
+	// the array is shared, so it must not be changed
+	public synchronized int[] get(int descriptionCode, int siteCode, int year) {
+		int[] counts = entries.get(new Key(descriptionCode, siteCode, year));
+		if (counts == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return counts;
+	}
+
+	public synchronized void put(int descriptionCode, int siteCode, int year,
+			int[] counts) {
+		entries.put(new Key(descriptionCode, siteCode, year), counts);
+	}
+
+	// forgets every stored count, for when the data they came from changes.
+	// the hit, miss and eviction totals are kept for the whole session
+	public synchronized void invalidate() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	// fraction of lookups answered from the cache, 0 before any lookup
+	public synchronized double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : hits / (double) lookups;
+	}
+
+	public synchronized String toString() {
+		return hits + " hits, " + misses + " misses ("
+				+ Math.round(getHitRate() * 100) + "% hit rate), " + evictions
+				+ " evictions, " + size() + "/" + capacity + " cached";
+	}
+
+	// one combination of filter codes
+	private static class Key {
+		private final int descriptionCode;
+		private final int siteCode;
+		private final int year;
+
+		Key(int descriptionCode, int siteCode, int year) {
+			this.descriptionCode = descriptionCode;
+			this.siteCode = siteCode;
+			this.year = year;
+		}
+
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return descriptionCode == key.descriptionCode
+					&& siteCode == key.siteCode && year == key.year;
+		}
+
+		public int hashCode() {
+			return (descriptionCode * 31 + siteCode) * 31 + year;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+// CountCube		Author: Garrett Reihner
+//
+// A dense table of reading counts indexed by parameter, site, year and
+// description, built from a ReadingStore. Every axis has one extra
+// "all" slot that counts the readings for every value of that axis, so the
+// bar heights for any combination of filters can be read straight out of
+// the table without looking at the readings again. Parameter is the
+// innermost axis, so the counts for all of the bars sit next to each other.
+// Readings added later are counted in without rebuilding the table.
+//
+// The table is kept in slabs, one for each description and year (including
+// the "all" ones), holding the counts of every site and parameter. A slab
+// that nothing has been counted into yet is not allocated. A copy of the
+// cube shares the slabs with it, and whichever of the two counts another
+// reading first gets its own copy of just the slabs that reading touches,
+// so copying a cube and adding a few readings to it takes time in
+// proportion to the number of description and year slabs they fall in,
+// not to the size of the whole table.
+
+public class CountCube {
+	// pass ALL in place of a code to leave that filter off. it is kept well
+	// away from -1 so that a name that was never seen still matches nothing
+	public static final int ALL = Integer.MIN_VALUE;
+
+	private int numParameters;
+	private int numSites;
+	private int numYears;
+	private int numDescriptions;
+	private int minYear;	// year that maps to slot 0 of the year axis
+
+	// slabs[description * (numYears + 1) + year][site * numParameters
+	// + parameter], where the last slot of each of the description, year
+	// and site axes is the "all" slot. a null slab counts nothing
+	private int[][] slabs;
+	// true for each slab this cube may change in place, false for one that
+	// may be shared with a copy
+	private boolean[] owned;
+
+	// fills in the cube with a single pass over the store
+	public CountCube(ReadingStore store, int minYear, int maxYear) {
+		numParameters = store.getParameters().size();
+		numSites = store.getSites().size();
+		numYears = Math.max(0, maxYear - minYear + 1);
+		numDescriptions = store.getDescriptions().size();
+		this.minYear = minYear;
+		slabs = new int[(numDescriptions + 1) * (numYears + 1)][];
+		owned = new boolean[slabs.length];
+
+		for (int row = 0; row < store.size(); row++) {
+			add(store, row);
+		}
+	}
+
+	// a cube with the same counts that later adds to this one do not change.
+	// only the list of slabs is copied, and from now on neither cube changes
+	// a slab in place until it has made its own copy of it
+	public CountCube copy() {
+		CountCube copy = new CountCube();
+		copy.numParameters = numParameters;
+		copy.numSites = numSites;
+		copy.numYears = numYears;
+		copy.numDescriptions = numDescriptions;
+		copy.minYear = minYear;
+		copy.slabs = slabs.clone();
+		copy.owned = new boolean[slabs.length];
+		owned = new boolean[slabs.length];
+		return copy;
+	}
+
+	private CountCube() {
+	}
+
+	// counts one more reading, such as one appended to the data file after
+	// the cube was built. the reading is added to its own cell and to every
+	// cell where one or more of its site, year and description are replaced
+	// by "all". a code or year outside the cube makes it grow first, which
+	// is rare, so adding a reading takes constant time on average
+	public void add(ReadingStore store, int row) {
+		int parameter = store.getParameterCode(row);
+		int site = store.getSiteCode(row);
+		int year = store.getYear(row);
+		int description = store.getDescriptionCode(row);
+		if (parameter >= numParameters || site >= numSites
+				|| description >= numDescriptions || year < minYear
+				|| year >= minYear + numYears) {
+			grow(Math.max(numParameters, parameter + 1),
+					Math.max(numSites, site + 1),
+					numYears == 0 ? year : Math.min(minYear, year),
+					numYears == 0 ? year 
+							: Math.max(minYear + numYears - 1, year),
+					Math.max(numDescriptions, description + 1));
+		}
+		year -= minYear;
+
+		// the two bits of combo choose whether the description and year use
+		// the "all" slot, and each slab counts the site and "all" sites
+		for (int combo = 0; combo < 4; combo++) {
+			int d = (combo & 1) == 0 ? description : numDescriptions;
+			int y = (combo & 2) == 0 ? year : numYears;
+			int[] slab = writableSlab(d * (numYears + 1) + y);
+			slab[site * numParameters + parameter]++;
+			slab[numSites * numParameters + parameter]++;
+		}
+	}
+
+	// the slab with the given index, allocated or copied first if this cube
+	// may not change it in place
+	private int[] writableSlab(int index) {
+		if (!owned[index]) {
+			slabs[index] = slabs[index] == null 
+					? new int[(numSites + 1) * numParameters]
+					: slabs[index].clone();
+			owned[index] = true;
+		}
+		return slabs[index];
+	}
+
+	// makes the cube bigger, moving every existing count (including the
+	// "all" slots) to its place in the new layout. slabs are only copied
+	// when the number of sites or parameters changes
+	private void grow(int newParameters, int newSites, int newMinYear,
+			int newMaxYear, int newDescriptions) {
+		int newYears = newMaxYear - newMinYear + 1;
+		int[][] newSlabs = new int[(newDescriptions + 1) * (newYears + 1)][];
+		boolean[] newOwned = new boolean[newSlabs.length];
+		boolean sameSlabs = newSites == numSites 
+				&& newParameters == numParameters;
+		for (int d = 0; d <= numDescriptions; d++) {
+			int toD = d == numDescriptions ? newDescriptions : d;
+			for (int y = 0; y <= numYears; y++) {
+				int toY = y == numYears ? newYears : y + minYear - newMinYear;
+				int from = d * (numYears + 1) + y;
+				int to = toD * (newYears + 1) + toY;
+				if (slabs[from] == null || sameSlabs) {
+					newSlabs[to] = slabs[from];
+					newOwned[to] = owned[from];
+					continue;
+				}
+				int[] slab = new int[(newSites + 1) * newParameters];
+				for (int s = 0; s <= numSites; s++) {
+					int toS = s == numSites ? newSites : s;
+					System.arraycopy(slabs[from], s * numParameters, slab, 
+							toS * newParameters, numParameters);
+				}
+				newSlabs[to] = slab;
+				newOwned[to] = true;
+			}
+		}
+		numParameters = newParameters;
+		numSites = newSites;
+		numYears = newYears;
+		numDescriptions = newDescriptions;
+		minYear = newMinYear;
+		slabs = newSlabs;
+		owned = newOwned;
+	}
+
+	// number of readings of each parameter matching the filters. each
+	// argument is a code (or a year) to filter on, or ALL to skip it. a code
+	// that is out of range matches nothing
+	public int[] countByParameter(int descriptionCode, int siteCode, int year) {
+		int[] result = new int[numParameters];
+		int[] slab = slab(descriptionCode, year);
+		int s = slot(siteCode, numSites);
+		if (slab != null && s != -1) {
+			System.arraycopy(slab, s * numParameters, result, 0, 
+					numParameters);
+		}
+		return result;
+	}
+
+	// number of readings of a single parameter matching the filters
+	public int count(int parameterCode, int descriptionCode, int siteCode,
+			int year) {
+		int[] slab = slab(descriptionCode, year);
+		int s = slot(siteCode, numSites);
+		if (slab == null || s == -1 || parameterCode < 0
+				|| parameterCode >= numParameters) {
+			return 0;
+		}
+		return slab[s * numParameters + parameterCode];
+	}
+
+	// the slab for the description and year, or null if either is out of
+	// range or nothing has been counted in it
+	private int[] slab(int descriptionCode, int year) {
+		int d = slot(descriptionCode, numDescriptions);
+		int y = slot(year == ALL ? ALL : year - minYear, numYears);
+		if (d == -1 || y == -1) {
+			return null;
+		}
+		return slabs[d * (numYears + 1) + y];
+	}
+
+	// turns a code into a slot on an axis of the given size
+	private static int slot(int code, int size) {
+		if (code == ALL) {
+			return size;
+		}
+		if (code < 0 || code >= size) {
+			return -1;
+		}
+		return code;
+	}
+}
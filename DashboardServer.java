@@ -0,0 +1,352 @@
+// DashboardServer		Author: Garrett Reihner
+//
+// Serves the counts behind the bars of the window over HTTP, with no window
+// at all, so other programs can ask for the same numbers. The data file (or
+// directory of partitions) is loaded once into a DatasetSnapshot, which
+// never changes, so every request reads it without locks.
+//
+//   GET /meta    readings, year bounds, sites, parameters (with the readings
+//                of each) and descriptions
+//   GET /counts?description=&site=&year=
+//                readings of each parameter for the filters, like the bars
+//                of the window. a filter that is left out or empty is off
+//
+// Names are matched exactly and have to be URL encoded (Very Unhealthy is
+// Very%20Unhealthy). An unknown name is a 404 and a bad year a 400. Both
+// answers are JSON. /meta is written once at startup, and each /counts
+// answer is written the first time it is asked for and kept, so the
+// filters that are asked for again and again are only sent bytes that are
+// already made. Requests are handled on virtual threads when the JVM has
+// them (Java 21 and later) and on a fixed pool of threads otherwise.
+//
+// usage: java DashboardServer [--port=N] [--parallelism=N] [filename]
+// ServerLoadTest measures how quickly it answers.
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DashboardServer {
+	private static final int ALL = DatasetSnapshot.ALL;
+	// connections waiting to be accepted before new ones are refused
+	private static final int BACKLOG = 4096;
+	// threads that handle requests when there are no virtual threads
+	private static final int POOL_THREADS = 64;
+	// most /counts answers kept. a filter of every description, site and
+	// year is far below this for the real data, but a generated file can
+	// have enough sites to go over it
+	private static final int MAX_CACHED = 1 << 16;
+	private static final String NODELAY = "sun.net.httpserver.nodelay";
+
+	private final DatasetSnapshot snapshot;
+	private final byte[] meta;
+	// /counts answers by their packed description, site and year (see key)
+	private final ConcurrentHashMap<Long, byte[]> cache =
+			new ConcurrentHashMap<Long, byte[]>();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private boolean virtual;	// true if on virtual threads
+
+	public DashboardServer(DatasetSnapshot snapshot) {
+		this.snapshot = snapshot;
+		meta = meta(snapshot);
+	}
+
+	public static void main(String[] args) {
+		String filename = "airQualitySynthetic.txt";
+		int port = 8080;
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].startsWith("--port=")) {
+					port = Integer.parseInt(args[i].substring(7));
+				} else if (args[i].startsWith("--parallelism=")) {
+					parallelism = Integer.parseInt(args[i].substring(14));
+				} else if (args[i].startsWith("--")) {
+					throw new IllegalArgumentException("unknown option: "
+							+ args[i]);
+				} else {
+					filename = args[i];
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("usage: java DashboardServer [--port=N] "
+					+ "[--parallelism=N] [filename]");
+			return;
+		}
+
+		try {
+			long start = System.nanoTime();
+			DatasetSnapshot snapshot = DatasetSnapshot.load(filename,
+					parallelism);
+			System.out.println("Loaded " + snapshot.getNumReadings()
+					+ " readings from " + filename
+					+ (snapshot.isFromSnapshot() ? " (snapshot)" : "")
+					+ " in " + (System.nanoTime() - start) / 1000000 + " ms");
+			DashboardServer server = new DashboardServer(snapshot);
+			server.start(port);
+			System.out.println("Serving /counts and /meta on port " + port
+					+ (server.isVirtual() ? " with virtual threads"
+					: " with " + POOL_THREADS + " threads"));
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				server.stop();
+				System.out.println(server);
+			}));
+		} catch (IOException e) {System.out.println(e);}
+	}
+
+	// starts answering on the port, on every address of this machine
+	public void start(int port) throws IOException {
+		// send each answer as soon as it is written. otherwise the body,
+		// written after the headers, waits for the client's delayed ACK,
+		// which adds about 40 ms to every answer. it is read once, when
+		// the first server is made, and can still be set on the command line
+		if (System.getProperty(NODELAY) == null) {
+			System.setProperty(NODELAY, "true");
+		}
+		server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		executor = QueryRunner.virtualThreads();
+		virtual = executor != null;
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(POOL_THREADS);
+		}
+		server.setExecutor(executor);
+		server.createContext("/meta", this::handleMeta);
+		server.createContext("/counts", this::handleCounts);
+		server.start();
+	}
+
+	// stops accepting requests and lets the ones in flight finish
+	public void stop() {
+		if (server != null) {
+			server.stop(1);
+			executor.shutdown();
+			server = null;
+		}
+	}
+
+	// the port it is answering on, such as when it was started on port 0
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	// whether requests are handled on virtual threads
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	private void handleMeta(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		if (!exchange.getRequestURI().getPath().equals("/meta")) {
+			send(exchange, 404, error("no such path"));
+		} else if (allowed(exchange)) {
+			send(exchange, 200, meta);
+		}
+	}
+
+	private void handleCounts(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		if (!exchange.getRequestURI().getPath().equals("/counts")) {
+			send(exchange, 404, error("no such path"));
+			return;
+		}
+		if (!allowed(exchange)) {
+			return;
+		}
+
+		// the filters, each off (ALL) unless it is given
+		int description = ALL;
+		int site = ALL;
+		int year = ALL;
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String pair : query.split("&")) {
+				if (pair.isEmpty()) {
+					continue;
+				}
+				int equals = pair.indexOf('=');
+				String name = equals == -1 ? pair : pair.substring(0, equals);
+				String value;
+				try {
+					value = equals == -1 ? "" : URLDecoder.decode(
+							pair.substring(equals + 1), StandardCharsets.UTF_8);
+				} catch (IllegalArgumentException e) {
+					send(exchange, 400, error("bad encoding: " + pair));
+					return;
+				}
+				if (value.isEmpty()) {
+					continue;
+				}
+				if (name.equals("description")) {
+					description = snapshot.descriptionCode(value);
+					if (description == -1) {
+						send(exchange, 404, error("no description " + value));
+						return;
+					}
+				} else if (name.equals("site")) {
+					site = snapshot.siteCode(value);
+					if (site == -1) {
+						send(exchange, 404, error("no site " + value));
+						return;
+					}
+				} else if (name.equals("year")) {
+					try {
+						year = Integer.parseInt(value);
+					} catch (NumberFormatException e) {
+						send(exchange, 400, error("bad year " + value));
+						return;
+					}
+				} else {
+					send(exchange, 400, error("unknown filter " + name));
+					return;
+				}
+			}
+		}
+		send(exchange, 200, counts(description, site, year));
+	}
+
+	// the /counts answer for the filters, from the cache when it has been
+	// asked for before. a year with no readings is not kept, so asking for
+	// every year there is cannot fill the cache
+	private byte[] counts(int description, int site, int year) {
+		boolean inside = year == ALL || (year >= snapshot.getMinYear()
+				&& year <= snapshot.getMaxYear());
+		if (!inside) {
+			return countsJson(description, site, year);
+		}
+		long key = key(description, site, year);
+		byte[] answer = cache.get(key);
+		if (answer != null) {
+			cacheHits.incrementAndGet();
+			return answer;
+		}
+		answer = countsJson(description, site, year);
+		if (cache.size() < MAX_CACHED) {
+			cache.putIfAbsent(key, answer);
+		}
+		return answer;
+	}
+
+	// packs the filters into one number, with ALL as 0 and everything else
+	// one more than its code (or its year past the earliest year)
+	private long key(int description, int site, int year) {
+		long d = description == ALL ? 0 : description + 1;
+		long s = site == ALL ? 0 : site + 1;
+		long y = year == ALL ? 0 : year - snapshot.getMinYear() + 1;
+		return (d << 42) | (s << 21) | y;
+	}
+
+	private byte[] countsJson(int description, int site, int year) {
+		int[] counts = snapshot.countByParameter(description, site, year);
+		String[] parameters = snapshot.getParameters();
+		StringBuilder json = new StringBuilder(32 + 24 * counts.length);
+		json.append("{\"description\":").append(description == ALL ? "null"
+				: quote(snapshot.getDescriptions()[description]));
+		json.append(",\"site\":").append(site == ALL ? "null"
+				: quote(snapshot.getSites()[site]));
+		json.append(",\"year\":").append(year == ALL ? "null"
+				: String.valueOf(year));
+		json.append(",\"counts\":{");
+		long total = 0;
+		for (int p = 0; p < counts.length; p++) {
+			if (p > 0) {
+				json.append(',');
+			}
+			json.append(quote(parameters[p])).append(':').append(counts[p]);
+			total += counts[p];
+		}
+		json.append("},\"total\":").append(total).append("}\n");
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] meta(DatasetSnapshot snapshot) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"readings\":").append(snapshot.getNumReadings());
+		json.append(",\"minYear\":").append(snapshot.getMinYear());
+		json.append(",\"maxYear\":").append(snapshot.getMaxYear());
+		json.append(",\"sites\":");
+		array(json, snapshot.getSites());
+		json.append(",\"parameters\":");
+		array(json, snapshot.getParameters());
+		json.append(",\"parameterCounts\":[");
+		int[] counts = snapshot.getParameterCounts();
+		for (int i = 0; i < counts.length; i++) {
+			json.append(i > 0 ? "," : "").append(counts[i]);
+		}
+		json.append("],\"descriptions\":");
+		array(json, snapshot.getDescriptions());
+		json.append("}\n");
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void array(StringBuilder json, String[] names) {
+		json.append('[');
+		for (int i = 0; i < names.length; i++) {
+			json.append(i > 0 ? "," : "").append(quote(names[i]));
+		}
+		json.append(']');
+	}
+
+	private static byte[] error(String message) {
+		return ("{\"error\":" + quote(message) + "}\n")
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	// the string as a JSON string, in quotes and with the characters JSON
+	// does not allow escaped
+	static String quote(String text) {
+		StringBuilder quoted = new StringBuilder(text.length() + 2);
+		quoted.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	// only GET and HEAD are answered. anything else gets a 405
+	private static boolean allowed(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		if (method.equals("GET") || method.equals("HEAD")) {
+			return true;
+		}
+		exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+		send(exchange, 405, error("only GET and HEAD"));
+		return false;
+	}
+
+	private static void send(HttpExchange exchange, int status, byte[] body)
+			throws IOException {
+		exchange.getResponseHeaders().set("Content-Type",
+				"application/json; charset=utf-8");
+		boolean head = exchange.getRequestMethod().equals("HEAD");
+		exchange.sendResponseHeaders(status, head ? -1 : body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			if (!head) {
+				out.write(body);
+			}
+		}
+	}
+
+	public String toString() {
+		return requests.get() + " requests, " + cacheHits.get()
+				+ " answered from " + cache.size() + " cached counts";
+	}
+}
@@ -0,0 +1,251 @@
+// DashboardStats		Author: Garrett Reihner
+//
+// Measures where the dashboard spends its time. The load phases and the
+// event handlers of the window report to it through the static methods
+// below, which commit a JFR event for each (LoadPhaseEvent and
+// InteractionEvent) and add it to totals and percentile histograms that
+// are published as an MBean. So "the dashboard is slow" can be looked at
+// in JConsole, or with a JFR recording started by -XX:StartFlightRecording
+// or jcmd, without changing any code. The interaction methods are only
+// called on the JavaFX Application Thread, while load phases can end on
+// any thread.
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class DashboardStats implements DashboardStatsMBean {
+	// the name the MBean is registered under
+	public static final String NAME = "AirQualityGDR:type=DashboardStats";
+
+	private static final DashboardStats STATS = new DashboardStats();
+	// used to read the bytes allocated by the current thread, or null if
+	// the JVM cannot tell
+	private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+	private final AtomicLong rowsLoaded = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+	// times each phase has run and their total nanoseconds, by phase
+	private final Map<String, AtomicLong> phaseRuns = 
+			new ConcurrentSkipListMap<String, AtomicLong>();
+	private final Map<String, AtomicLong> phaseNanos = 
+			new ConcurrentSkipListMap<String, AtomicLong>();
+
+	// latency, bar update time and allocated bytes of each handler, and of
+	// every handler together
+	private final Map<String, LatencyHistogram[]> handlers = 
+			new ConcurrentHashMap<String, LatencyHistogram[]>();
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final LatencyHistogram barUpdates = new LatencyHistogram();
+	private final LatencyHistogram allocations = new LatencyHistogram();
+
+	// the handler being timed, or null between handlers
+	private InteractionEvent current;
+
+	private DashboardStats() {
+	}
+
+	// makes the statistics visible over JMX. calling it again does nothing
+	public static synchronized void register() {
+		try {
+			ObjectName name = new ObjectName(NAME);
+			if (!ManagementFactory.getPlatformMBeanServer()
+					.isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer()
+						.registerMBean(STATS, name);
+			}
+		} catch (JMException e) {System.out.println(e);};
+	}
+
+	// the statistics that register publishes
+	public static DashboardStats get() {
+		return STATS;
+	}
+
+	// starts timing a load phase, which has to be handed to endPhase
+	public static LoadPhaseEvent beginPhase(String phase) {
+		LoadPhaseEvent event = new LoadPhaseEvent();
+		event.phase = phase;
+		event.begin();
+		event.startNanos = System.nanoTime();
+		return event;
+	}
+
+	// ends a phase that did not read any of the data
+	public static void endPhase(LoadPhaseEvent event) {
+		endPhase(event, 0, 0);
+	}
+
+	// ends a phase that read the given number of rows and bytes
+	public static void endPhase(LoadPhaseEvent event, long rows, long bytes) {
+		event.rows = rows;
+		event.bytes = bytes;
+		event.commit();
+		STATS.rowsLoaded.addAndGet(rows);
+		STATS.bytesRead.addAndGet(bytes);
+		STATS.phaseRuns.computeIfAbsent(event.phase, 
+				phase -> new AtomicLong()).incrementAndGet();
+		STATS.phaseNanos.computeIfAbsent(event.phase, 
+				phase -> new AtomicLong()).addAndGet(
+				System.nanoTime() - event.startNanos);
+	}
+
+	// starts timing an event handler of the window. every call has to be
+	// followed by endInteraction once the handler is done
+	public static void beginInteraction(String handler) {
+		InteractionEvent event = new InteractionEvent();
+		event.handler = handler;
+		event.begin();
+		event.startAllocated = allocatedBytes();
+		event.startNanos = System.nanoTime();
+		STATS.current = event;
+	}
+
+	// adds time spent working out filtered values to the current handler
+	public static void addFilterTime(long nanos) {
+		if (STATS.current != null) {
+			STATS.current.filterTime += nanos;
+		}
+	}
+
+	// adds time spent changing the bars to the current handler
+	public static void addBarUpdateTime(long nanos) {
+		if (STATS.current != null) {
+			STATS.current.barUpdateTime += nanos;
+		}
+	}
+
+	// finishes timing the current handler
+	public static void endInteraction() {
+		InteractionEvent event = STATS.current;
+		if (event == null) {
+			return;
+		}
+		STATS.current = null;
+		long latency = System.nanoTime() - event.startNanos;
+		event.allocated = THREADS == null ? 0 
+				: allocatedBytes() - event.startAllocated;
+		event.commit();
+
+		LatencyHistogram[] histograms = STATS.handlers.computeIfAbsent(
+				event.handler, handler -> new LatencyHistogram[] {
+				new LatencyHistogram(), new LatencyHistogram(), 
+				new LatencyHistogram()});
+		histograms[0].record(latency);
+		histograms[1].record(event.barUpdateTime);
+		histograms[2].record(event.allocated);
+		STATS.latencies.record(latency);
+		STATS.barUpdates.record(event.barUpdateTime);
+		STATS.allocations.record(event.allocated);
+	}
+
+	public long getRowsLoaded() {
+		return rowsLoaded.get();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	public String[] getLoadPhases() {
+		ArrayList<String> lines = new ArrayList<String>();
+		for (String phase : phaseNanos.keySet()) {
+			lines.add(phase + ": " + phaseRuns.get(phase) + " time(s), " 
+					+ millis(phaseNanos.get(phase).get()) + " ms");
+		}
+		return lines.toArray(new String[0]);
+	}
+
+	public long getInteractions() {
+		return latencies.getCount();
+	}
+
+	public String[] getInteractionPercentiles() {
+		ArrayList<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, LatencyHistogram[]> entry 
+				: new TreeMap<String, LatencyHistogram[]>(handlers)
+				.entrySet()) {
+			LatencyHistogram[] histograms = entry.getValue();
+			lines.add(entry.getKey() + ": " + histograms[0].getCount() 
+					+ " calls, latency p50 " 
+					+ millis(histograms[0].getPercentile(0.5)) + " p90 "
+					+ millis(histograms[0].getPercentile(0.9)) + " p99 "
+					+ millis(histograms[0].getPercentile(0.99)) + " max "
+					+ millis(histograms[0].getMax()) + " ms, bar update p50 "
+					+ millis(histograms[1].getPercentile(0.5)) + " p99 "
+					+ millis(histograms[1].getPercentile(0.99)) 
+					+ " ms, allocated p50 " + histograms[2].getPercentile(0.5)
+					+ " p99 " + histograms[2].getPercentile(0.99) + " bytes");
+		}
+		return lines.toArray(new String[0]);
+	}
+
+	public double getLatencyP50Millis() {
+		return millis(latencies.getPercentile(0.5));
+	}
+
+	public double getLatencyP90Millis() {
+		return millis(latencies.getPercentile(0.9));
+	}
+
+	public double getLatencyP99Millis() {
+		return millis(latencies.getPercentile(0.99));
+	}
+
+	public double getBarUpdateP50Millis() {
+		return millis(barUpdates.getPercentile(0.5));
+	}
+
+	public double getBarUpdateP99Millis() {
+		return millis(barUpdates.getPercentile(0.99));
+	}
+
+	public long getAllocatedP50Bytes() {
+		return allocations.getPercentile(0.5);
+	}
+
+	public long getAllocatedP99Bytes() {
+		return allocations.getPercentile(0.99);
+	}
+
+	public void reset() {
+		rowsLoaded.set(0);
+		bytesRead.set(0);
+		phaseRuns.clear();
+		phaseNanos.clear();
+		handlers.clear();
+		latencies.reset();
+		barUpdates.reset();
+		allocations.reset();
+	}
+
+	// nanoseconds as milliseconds rounded to a microsecond
+	private static double millis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+
+	private static long allocatedBytes() {
+		return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+	}
+
+	// the HotSpot thread bean, if allocation counting is supported and on
+	private static com.sun.management.ThreadMXBean threads() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotspot = 
+					(com.sun.management.ThreadMXBean) threads;
+			if (hotspot.isThreadAllocatedMemorySupported() 
+					&& hotspot.isThreadAllocatedMemoryEnabled()) {
+				return hotspot;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,43 @@
+// DashboardStatsMBean		Author: Garrett Reihner
+//
+// What DashboardStats shows over JMX, for example in JConsole under
+// AirQualityGDR > DashboardStats. Times are in milliseconds and the
+// percentiles come from LatencyHistogram, so they are at most about 6%
+// above the true value.
+
+public interface DashboardStatsMBean {
+	// rows and bytes read from the data file or its snapshot, including
+	// lines read while following the file
+	long getRowsLoaded();
+
+	long getBytesRead();
+
+	// total time spent in each load phase, one line per phase such as
+	// "parse: 1 time(s), 812.4 ms"
+	String[] getLoadPhases();
+
+	// number of event handlers that have been timed
+	long getInteractions();
+
+	// one line per handler with the percentiles of its latency, the time it
+	// spent updating the bars and the bytes it allocated
+	String[] getInteractionPercentiles();
+
+	// the following cover every handler together
+	double getLatencyP50Millis();
+
+	double getLatencyP90Millis();
+
+	double getLatencyP99Millis();
+
+	double getBarUpdateP50Millis();
+
+	double getBarUpdateP99Millis();
+
+	long getAllocatedP50Bytes();
+
+	long getAllocatedP99Bytes();
+
+	// forgets everything recorded so far
+	void reset();
+}
@@ -0,0 +1,304 @@
+// DataGenerator		Author: Garrett Reihner
+//
+// Writes a synthetic data file with the same eight tab separated columns
+// (and header line) as the Allegheny County air quality files, so that the
+// dashboard and AirTest can be tried on files far bigger than the ones that
+// come with it. Every line is written as soon as it is made, so the size of
+// the file does not change how much memory this needs, and the same seed
+// always gives the same file.
+//
+// usage: java DataGenerator [options] filename
+//   --rows=N          number of readings (default 1000000)
+//   --sites=N         number of unique sites (default 15)
+//   --parameters=N    number of unique parameters (default 14)
+//   --years=FROM-TO   range of years the dates fall in (default 2016-2024)
+//   --skew=S          each description is S times as common as the one
+//                     before it, from Good to Very Unhealthy (default 0.1,
+//                     1 makes them all equally common)
+//   --advisory=F      fraction of readings that have health advisory and
+//                     effects text (default 0.085)
+//   --seed=N          seed for the random choices (default 42)
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+public class DataGenerator {
+	private static final String HEADER = "_id\tdate\tsite\tparameter\t"
+			+ "index_value\tdescription\thealth_advisory\thealth_effects\n";
+
+	// the sites and parameters in the real data. extra ones are numbered
+	private static final String[] SITES = {"Avalon", "Clairton",
+			"Flag Plaza", "Glassport High Street", "Harrison Township",
+			"Lawrenceville", "Lawrenceville 2", "Liberty", "Liberty 2",
+			"Lincoln", "North Braddock", "Parkway East", "Pittsburgh",
+			"South Fayette", "West Mifflin"};
+	private static final String[] PARAMETERS = {"CO", "NO2", "NO2_200",
+			"NO2_500", "OZONE", "PM10", "PM10B", "PM10_640", "PM25",
+			"PM25(2)", "PM25B", "PM25T", "PM25_640", "SO2"};
+
+	// descriptions from best to worst, the lowest index value of each, and
+	// the health texts used for each one (taken from the real data)
+	private static final String[] DESCRIPTIONS = {"Good", "Moderate",
+			"Unhealthy for Sensitive Groups", "Unhealthy", "Very Unhealthy"};
+	private static final int[] INDEX_START = {0, 51, 101, 151, 201, 301};
+	private static final String[] ADVISORIES = {
+			"Unusually sensitive people should consider reducing prolonged "
+			+ "or heavy outdoor exertion.",
+			"Unusually sensitive people should consider reducing prolonged "
+			+ "or heavy exertion.",
+			"\"People with heart or lung disease, older adults, and children "
+			+ "should reduce prolonged or heavy exertion.\"",
+			"\"People with heart or lung disease, older adults, and children "
+			+ "should avoid prolonged or heavy exertion; everyone else should "
+			+ "reduce prolonged or heavy exertion.\"",
+			"\"People with heart or lung disease, older adults, and children "
+			+ "should avoid all physical activity outdoors.\""};
+	private static final String[] EFFECTS = {
+			"Unusually sensitive individuals may experience respiratory "
+			+ "symptoms.",
+			"\"Respiratory symptoms possible in unusually sensitive "
+			+ "individuals, possible aggravation of heart or lung disease in "
+			+ "people with cardiopulmonary disease and older adults.\"",
+			"\"Increasing likelihood of respiratory symptoms in sensitive "
+			+ "individuals, aggravation of heart or lung disease and premature "
+			+ "mortality in people with cardiopulmonary disease and older "
+			+ "adults.\"",
+			"Increased aggravation of heart or lung disease and premature "
+			+ "mortality in people with cardiopulmonary disease and older "
+			+ "adults; increased respiratory effects in general population.",
+			"\"Significant aggravation of heart or lung disease and premature "
+			+ "mortality in people with cardiopulmonary disease and older "
+			+ "adults; significant increase in respiratory effects in general "
+			+ "population.\""};
+
+	private long rows = 1000000;
+	private int numSites = SITES.length;
+	private int numParameters = PARAMETERS.length;
+	private int firstYear = 2016;
+	private int lastYear = 2024;
+	private double skew = 0.1;
+	private double advisoryRate = 0.085;
+	private long seed = 42;
+
+	// the text of every column value, ready to be copied into a line
+	private byte[][] siteBytes;
+	private byte[][] parameterBytes;
+	private byte[][] descriptionBytes;
+	private byte[][] advisoryBytes;
+	private byte[][] effectsBytes;
+	private byte[][] dateBytes;	// M/D/YYYY of every day in the years
+	// chance of a reading having each description or a better one
+	private double[] descriptionOdds;
+
+	public static void main(String[] args) {
+		DataGenerator generator = new DataGenerator();
+		String filename = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].startsWith("--")) {
+					generator.setOption(args[i]);
+				} else {
+					filename = args[i];
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			filename = null;
+		}
+		if (filename == null) {
+			System.out.println("usage: java DataGenerator [--rows=N] "
+					+ "[--sites=N] [--parameters=N] [--years=FROM-TO] "
+					+ "[--skew=S] [--advisory=F] [--seed=N] filename");
+			return;
+		}
+
+		long start = System.nanoTime();
+		try {
+			long bytes = generator.write(filename);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println("Wrote " + generator.rows + " readings ("
+					+ bytes / 1000000 + " MB) to " + filename + " in "
+					+ Math.round(seconds * 10) / 10.0 + " s ("
+					+ Math.round(bytes / 1e6 / seconds) + " MB/s)");
+		} catch (IOException e) {System.out.println(e);};
+	}
+
+	// reads one --name=value option
+	private void setOption(String option) {
+		int equals = option.indexOf('=');
+		if (equals == -1) {
+			throw new IllegalArgumentException("missing value: " + option);
+		}
+		String name = option.substring(2, equals);
+		String value = option.substring(equals + 1);
+		try {
+			if (name.equals("rows")) {
+				rows = Long.parseLong(value);
+			} else if (name.equals("sites")) {
+				numSites = Integer.parseInt(value);
+			} else if (name.equals("parameters")) {
+				numParameters = Integer.parseInt(value);
+			} else if (name.equals("years")) {
+				int dash = value.indexOf('-');
+				firstYear = Integer.parseInt(value.substring(0, dash));
+				lastYear = Integer.parseInt(value.substring(dash + 1));
+			} else if (name.equals("skew")) {
+				skew = Double.parseDouble(value);
+			} else if (name.equals("advisory")) {
+				advisoryRate = Double.parseDouble(value);
+			} else if (name.equals("seed")) {
+				seed = Long.parseLong(value);
+			} else {
+				throw new IllegalArgumentException("unknown option: "
+						+ option);
+			}
+		} catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("bad value: " + option);
+		}
+		if (rows < 0 || numSites < 1 || numParameters < 1
+				|| firstYear > lastYear || skew <= 0 || advisoryRate < 0
+				|| advisoryRate > 1) {
+			throw new IllegalArgumentException("out of range: " + option);
+		}
+	}
+
+	// writes the file and returns its size in bytes
+	private long write(String filename) throws IOException {
+		prepare();
+		SplittableRandom random = new SplittableRandom(seed);
+		// room for the longest value of every column, the tabs and newline
+		byte[] line = new byte[20 + longest(dateBytes) + longest(siteBytes)
+				+ longest(parameterBytes) + 20 + longest(descriptionBytes)
+				+ longest(advisoryBytes) + longest(effectsBytes) + 8];
+		long bytes = 0;
+
+		try (OutputStream out = new BufferedOutputStream(
+				new FileOutputStream(filename), 1 << 20)) {
+			byte[] header = HEADER.getBytes(StandardCharsets.UTF_8);
+			out.write(header);
+			bytes += header.length;
+
+			for (long id = 1; id <= rows; id++) {
+				int description = description(random.nextDouble());
+				int index = INDEX_START[description] + random.nextInt(
+						INDEX_START[description + 1]
+						- INDEX_START[description]);
+				boolean advisory = random.nextDouble() < advisoryRate;
+
+				int length = writeLong(line, 0, id);
+				line[length++] = '\t';
+				length = copy(line, length,
+						dateBytes[random.nextInt(dateBytes.length)]);
+				line[length++] = '\t';
+				length = copy(line, length,
+						siteBytes[random.nextInt(numSites)]);
+				line[length++] = '\t';
+				length = copy(line, length,
+						parameterBytes[random.nextInt(numParameters)]);
+				line[length++] = '\t';
+				length = writeLong(line, length, index);
+				line[length++] = '\t';
+				length = copy(line, length, descriptionBytes[description]);
+				line[length++] = '\t';
+				if (advisory) {
+					length = copy(line, length, advisoryBytes[description]);
+				}
+				line[length++] = '\t';
+				if (advisory) {
+					length = copy(line, length, effectsBytes[description]);
+				}
+				line[length++] = '\n';
+				out.write(line, 0, length);
+				bytes += length;
+			}
+		}
+		return bytes;
+	}
+
+	// turns the names, dates and odds into what write uses for every line
+	private void prepare() {
+		siteBytes = new byte[numSites][];
+		for (int i = 0; i < numSites; i++) {
+			siteBytes[i] = bytes(i < SITES.length ? SITES[i]
+					: "Site " + (i + 1));
+		}
+		parameterBytes = new byte[numParameters][];
+		for (int i = 0; i < numParameters; i++) {
+			parameterBytes[i] = bytes(i < PARAMETERS.length ? PARAMETERS[i]
+					: "PARAM_" + (i + 1));
+		}
+
+		descriptionBytes = new byte[DESCRIPTIONS.length][];
+		advisoryBytes = new byte[DESCRIPTIONS.length][];
+		effectsBytes = new byte[DESCRIPTIONS.length][];
+		descriptionOdds = new double[DESCRIPTIONS.length];
+		double weight = 1;
+		double total = 0;
+		for (int i = 0; i < DESCRIPTIONS.length; i++) {
+			descriptionBytes[i] = bytes(DESCRIPTIONS[i]);
+			advisoryBytes[i] = bytes(ADVISORIES[i]);
+			effectsBytes[i] = bytes(EFFECTS[i]);
+			total += weight;
+			descriptionOdds[i] = total;
+			weight *= skew;
+		}
+		for (int i = 0; i < DESCRIPTIONS.length; i++) {
+			descriptionOdds[i] /= total;
+		}
+
+		int firstDay = ReadingStore.epochDay(firstYear, 1, 1);
+		int lastDay = ReadingStore.epochDay(lastYear, 12, 31);
+		dateBytes = new byte[lastDay - firstDay + 1][];
+		LocalDate date = LocalDate.ofEpochDay(firstDay);
+		for (int i = 0; i < dateBytes.length; i++) {
+			dateBytes[i] = bytes(date.getMonthValue() + "/"
+					+ date.getDayOfMonth() + "/" + date.getYear());
+			date = date.plusDays(1);
+		}
+	}
+
+	// picks a description for a random number between 0 and 1
+	private int description(double chance) {
+		int description = 0;
+		while (description < descriptionOdds.length - 1
+				&& chance >= descriptionOdds[description]) {
+			description++;
+		}
+		return description;
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int longest(byte[][] values) {
+		int longest = 0;
+		for (int i = 0; i < values.length; i++) {
+			longest = Math.max(longest, values[i].length);
+		}
+		return longest;
+	}
+
+	// copies the bytes into the line at the given position and returns the
+	// position after them
+	private static int copy(byte[] line, int position, byte[] value) {
+		System.arraycopy(value, 0, line, position, value.length);
+		return position + value.length;
+	}
+
+	// writes the digits of a non-negative number into the line at the given
+	// position and returns the position after them
+	private static int writeLong(byte[] line, int position, long value) {
+		int digits = 1;
+		for (long rest = value / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		for (int i = position + digits - 1; i >= position; i--) {
+			line[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return position + digits;
+	}
+}
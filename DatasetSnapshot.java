@@ -0,0 +1,355 @@
+// DatasetSnapshot		Author: Garrett Reihner
+//
+// Everything the dashboard shows about the loaded data at one moment: the
+// readings, the count table, the sites, parameters and descriptions, the
+// year and day bounds and the most readings of one parameter. It never
+// changes once it is made, so any number of threads can read it without
+// locks, and newer data takes its place by swapping a single reference.
+//
+// A snapshot is either opened from a data file or directory of partitions,
+// or made from an earlier one of the same load with lines appended to the
+// file (withAppended) or more partitions read (withPartitions). Those add
+// to the loader the snapshots of one load share, so they are made one at a
+// time on a single thread, but the snapshots made before do not see the
+// new readings: each one has its own view of the store, which shares the
+// columns without copying them (see ReadingStore.view), and its own copy
+// of the count table, which shares every slab the new readings do not
+// fall in (see CountCube.copy). Making one therefore takes time in
+// proportion to the new readings and the description and year slabs they
+// touch, plus copying the dictionaries and text pool, rather than to all
+// of the readings or the whole table. AppendBenchmark times it. Arrays
+// handed out by the getters are shared and must not be changed.
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class DatasetSnapshot {
+	// pass ALL in place of a code or year to leave that filter off
+	public static final int ALL = Integer.MIN_VALUE;
+
+	private final String filename;
+	// FileWatcher signature of the data taken just before it was loaded
+	private final long signature;
+	// holds the readings of every snapshot of this load and is added to
+	// by the next one. only its view in store is read
+	private final AirDataLoader loader;
+	// the partitions and their manifest, or null for a single file, and
+	// the partitions whose readings are in the store
+	private final PartitionedDataset dataset;
+	private final List<PartitionedDataset.Partition> added;
+
+	private final ReadingStore store;
+	private final CountCube cube;
+	private final String[] sites;
+	private final String[] parameters;
+	private final String[] descriptions;
+	private final int[] parameterCounts;
+	private final long numReadings;	// readings of every partition
+	private final int minYear;
+	private final int maxYear;
+	private final int maxReadings;	// most readings of one parameter
+	private final int maxIndexValue;	// highest index value of any reading
+	// days of the earliest and latest readings, since 1/1/1970
+	private final int firstDay;
+	private final int lastDay;
+	private final long endOffset;	// just past the last line read
+	private final boolean fromSnapshot;	// read from a snapshot sidecar
+	private final boolean compressed;	// read from a compressed file
+	private final long buildNanos;	// time taken to load or make it
+
+	// built by the first query that needs it. two queries at once may both
+	// build it, and either one is kept
+	private volatile DateIndex dateIndex;
+	private volatile BitmapIndex bitmapIndex;
+
+	// takes a snapshot of the loader, counting only the readings the
+	// previous snapshot of the same load (or null) does not have into a
+	// copy of its cube
+	private DatasetSnapshot(DatasetSnapshot previous, String filename,
+			long signature, AirDataLoader loader, PartitionedDataset dataset,
+			long start) {
+		this.filename = filename;
+		this.signature = signature;
+		this.loader = loader;
+		this.dataset = dataset;
+		store = loader.view();
+		descriptions = store.getDescriptions().names();
+		endOffset = loader.getEndOffset();
+		fromSnapshot = loader.isFromSnapshot();
+		compressed = loader.isCompressed();
+		if (dataset != null) {
+			// the store only has the partitions read so far, so the bounds
+			// and counts of all of the data come from the manifest
+			added = dataset.getAdded();
+			sites = dataset.getSites();
+			parameters = dataset.getParameters();
+			parameterCounts = dataset.getParameterCounts();
+			numReadings = dataset.getNumReadings();
+			minYear = dataset.getMinYear();
+			maxYear = dataset.getMaxYear();
+		} else {
+			added = new ArrayList<PartitionedDataset.Partition>();
+			sites = loader.getSites();
+			parameters = loader.getParameters();
+			parameterCounts = loader.getParameterCounts();
+			numReadings = store.size();
+			minYear = loader.getMinYear();
+			maxYear = loader.getMaxYear();
+		}
+		int most = 0;
+		for (int count : parameterCounts) {
+			most = Math.max(most, count);
+		}
+		maxReadings = most;
+
+		int firstRow = 0;
+		int highest = 0;
+		int first = Integer.MAX_VALUE;
+		int last = Integer.MIN_VALUE;
+		if (previous != null) {
+			// shares the slabs of the previous cube until they are counted in
+			cube = previous.cube.copy();
+			firstRow = previous.store.size();
+			highest = previous.maxIndexValue;
+			first = previous.firstDay;
+			last = previous.lastDay;
+		} else {
+			LoadPhaseEvent phase = DashboardStats.beginPhase("cube");
+			cube = new CountCube(store, minYear, maxYear);
+			DashboardStats.endPhase(phase);
+			if (dataset != null) {
+				highest = dataset.getMaxIndexValue();
+				first = dataset.getFirstDay();
+				last = dataset.getLastDay();
+			}
+		}
+		for (int row = firstRow; row < store.size(); row++) {
+			if (previous != null) {
+				cube.add(store, row);
+			}
+			highest = Math.max(highest, store.getIndexValue(row));
+			first = Math.min(first, store.getDay(row));
+			last = Math.max(last, store.getDay(row));
+		}
+		maxIndexValue = highest;
+		firstDay = first;
+		lastDay = last;
+		buildNanos = System.nanoTime() - start;
+	}
+
+	// loads a data file (from its snapshot sidecar when it has an up to
+	// date one) with the given number of parsing threads, telling the
+	// listener (if not null) how far it has got. a file that is going to be
+	// followed is loaded with wholeLinesOnly, so a last line that is still
+	// being written is left for the FileFollower (see
+	// AirDataLoader.setWholeLinesOnly). for a directory of partitions only
+	// the manifest is read, and the partitions are added as they are needed
+	// with withPartitions
+	public static DatasetSnapshot open(String filename, int parallelism,
+			boolean wholeLinesOnly, AirDataLoader.ProgressListener listener)
+			throws IOException {
+		long start = System.nanoTime();
+		long signature = FileWatcher.signature(filename);
+		if (PartitionedDataset.isPartitioned(filename)) {
+			PartitionedDataset dataset = new PartitionedDataset(filename);
+			dataset.open(parallelism);
+			dataset.addRead();
+			return new DatasetSnapshot(null, filename, signature,
+					dataset.getLoader(), dataset, start);
+		}
+		AirDataLoader loader = new AirDataLoader();
+		loader.setProgressListener(listener);
+		loader.setWholeLinesOnly(wholeLinesOnly);
+		loader.loadWithSnapshot(filename, parallelism);
+		loader.getStore();		// drops the spare capacity of the columns
+		return new DatasetSnapshot(null, filename, signature, loader, null,
+				start);
+	}
+
+	// loads a data file or every partition of a directory
+	public static DatasetSnapshot load(String filename, int parallelism)
+			throws IOException {
+		DatasetSnapshot snapshot = open(filename, parallelism, false, null);
+		List<PartitionedDataset.Partition> missing = snapshot.missing(null);
+		if (!missing.isEmpty()) {
+			snapshot = snapshot.withPartitions(missing,
+					snapshot.dataset.read(missing));
+		}
+		return snapshot;
+	}
+
+	// a snapshot with the readings that a FileFollower found appended to
+	// the file added. it adds them to the loader of this load, so it is
+	// only called on the thread that makes the snapshots
+	public DatasetSnapshot withAppended(AirDataLoader part) {
+		long start = System.nanoTime();
+		loader.append(part);
+		return new DatasetSnapshot(this, filename, signature, loader, dataset,
+				start);
+	}
+
+	// a snapshot with the partitions (read by PartitionedDataset.read)
+	// added, called like withAppended. partitions that a newer snapshot
+	// already added are skipped, and if that is all of them this one is
+	// returned
+	public DatasetSnapshot withPartitions(
+			List<PartitionedDataset.Partition> partitions,
+			AirDataLoader[] parts) {
+		long start = System.nanoTime();
+		boolean addedAny = false;
+		for (int i = 0; i < parts.length; i++) {
+			if (dataset.add(partitions.get(i), parts[i]) >= 0) {
+				addedAny = true;
+			}
+		}
+		if (!addedAny) {
+			return this;
+		}
+		return new DatasetSnapshot(this, filename, signature, loader, dataset,
+				start);
+	}
+
+	// true if both snapshots come from the same load, so one was made from
+	// the other by adding readings
+	public boolean isSameLoad(DatasetSnapshot other) {
+		return other != null && loader == other.loader;
+	}
+
+	// the partitions with readings on the days (every one for null) that
+	// are not in this snapshot's store. none for a single file
+	public List<PartitionedDataset.Partition> missing(DateRange dates) {
+		if (dataset == null) {
+			return new ArrayList<PartitionedDataset.Partition>();
+		}
+		return dataset.missing(dates, added);
+	}
+
+	// readings of each parameter matching the filters. each argument is a
+	// code (or a year) to filter on, or ALL to skip it. a code of -1 (a name
+	// that is not in the data) matches nothing
+	public int[] countByParameter(int descriptionCode, int siteCode,
+			int year) {
+		return cube.countByParameter(descriptionCode, siteCode, year);
+	}
+
+	public DateIndex getDateIndex() {
+		DateIndex index = dateIndex;
+		if (index == null) {
+			LoadPhaseEvent phase = DashboardStats.beginPhase("date index");
+			index = new DateIndex(store);
+			DashboardStats.endPhase(phase);
+			dateIndex = index;
+		}
+		return index;
+	}
+
+	public BitmapIndex getBitmapIndex() {
+		BitmapIndex index = bitmapIndex;
+		if (index == null) {
+			LoadPhaseEvent phase = DashboardStats.beginPhase("bitmap index");
+			index = new BitmapIndex(store, minYear, maxYear);
+			DashboardStats.endPhase(phase);
+			bitmapIndex = index;
+		}
+		return index;
+	}
+
+	// the code of a description, site or parameter, or -1 if it is not in
+	// the data
+	public int descriptionCode(String description) {
+		return store.descriptionCode(description);
+	}
+
+	public int siteCode(String site) {
+		return store.siteCode(site);
+	}
+
+	public int parameterCode(String parameter) {
+		return store.parameterCode(parameter);
+	}
+
+	public String getFilename() {
+		return filename;
+	}
+
+	public long getSignature() {
+		return signature;
+	}
+
+	// the partitions of a directory with their manifest, or null for a
+	// single file. the manifest counts never change, but which partitions
+	// have been added does, so that is asked of the snapshot with missing
+	public PartitionedDataset getDataset() {
+		return dataset;
+	}
+
+	public ReadingStore getStore() {
+		return store;
+	}
+
+	// every reading of the data, including partitions not read yet
+	public long getNumReadings() {
+		return numReadings;
+	}
+
+	// unique sites in the order they first appear in the data
+	public String[] getSites() {
+		return sites;
+	}
+
+	// unique parameters in the order they first appear in the data
+	public String[] getParameters() {
+		return parameters;
+	}
+
+	public String[] getDescriptions() {
+		return descriptions;
+	}
+
+	// number of readings of each parameter, in the same order as
+	// getParameters
+	public int[] getParameterCounts() {
+		return parameterCounts;
+	}
+
+	public int getMinYear() {
+		return minYear;
+	}
+
+	public int getMaxYear() {
+		return maxYear;
+	}
+
+	public int getMaxReadings() {
+		return maxReadings;
+	}
+
+	public int getMaxIndexValue() {
+		return maxIndexValue;
+	}
+
+	public int getFirstDay() {
+		return firstDay;
+	}
+
+	public int getLastDay() {
+		return lastDay;
+	}
+
+	public long getEndOffset() {
+		return endOffset;
+	}
+
+	public boolean isFromSnapshot() {
+		return fromSnapshot;
+	}
+
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+}
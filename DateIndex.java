@@ -0,0 +1,186 @@
+// DateIndex		Author: Garrett Reihner
+//
+// Answers counts for any set of days, such as a range of years, the same
+// months of every year or the last 90 days, without going through every
+// reading. The rows of the store are put in date order once, and for every
+// day that has readings the index keeps a running total of the readings of
+// each parameter with each description (and with any description) on all
+// of the days before it. The readings of a window of days are then found
+// with two binary searches over the days and one subtraction per
+// parameter, however many readings there are. With a site filter on, only
+// the rows of the window itself are looked at, since they sit next to each
+// other in date order. Running totals by site as well would take a
+// table as big as the count cube for every single day.
+
+import java.util.Arrays;
+
+public class DateIndex {
+	// pass ALL in place of a code to leave that filter off
+	public static final int ALL = Integer.MIN_VALUE;
+
+	private final ReadingStore store;
+	private final int numParameters;
+	private final int numSites;
+	private final int numDescriptions;
+
+	private final int[] order;		// rows of the store in date order
+	private final int[] days;		// every day with readings, in order
+	// position in order of the first row of each day, with one extra
+	// entry at the end for the number of rows
+	private final int[] dayStarts;
+
+	// totals[(d * (numDescriptions + 1) + description) * numParameters
+	// + parameter] is the number of readings on the days before days[d],
+	// where the last description slot counts every description. there is
+	// one extra day at the end holding the totals for the whole store
+	private final int[] totals;
+
+	// sorts the rows by day and adds up the running totals
+	public DateIndex(ReadingStore store) {
+		this.store = store;
+		numParameters = store.getParameters().size();
+		numSites = store.getSites().size();
+		numDescriptions = store.getDescriptions().size();
+		int size = store.size();
+
+		// the day goes in the high half so sorting the packed rows sorts
+		// them by day, keeping rows of the same day in file order
+		long[] packed = new long[size];
+		for (int row = 0; row < size; row++) {
+			packed[row] = ((long) store.getDay(row) << 32) | row;
+		}
+		Arrays.sort(packed);
+		order = new int[size];
+		int numDays = 0;
+		int[] allDays = new int[size];
+		int[] starts = new int[size + 1];
+		for (int i = 0; i < size; i++) {
+			order[i] = (int) packed[i];
+			int day = (int) (packed[i] >> 32);
+			if (numDays == 0 || allDays[numDays - 1] != day) {
+				allDays[numDays] = day;
+				starts[numDays++] = i;
+			}
+		}
+		starts[numDays] = size;
+		days = Arrays.copyOf(allDays, numDays);
+		dayStarts = Arrays.copyOf(starts, numDays + 1);
+
+		int daySize = (numDescriptions + 1) * numParameters;
+		totals = new int[(numDays + 1) * daySize];
+		for (int d = 0; d < numDays; d++) {
+			// each day starts from the totals of the day before
+			int next = (d + 1) * daySize;
+			System.arraycopy(totals, d * daySize, totals, next, daySize);
+			for (int i = dayStarts[d]; i < dayStarts[d + 1]; i++) {
+				int row = order[i];
+				int parameter = store.getParameterCode(row);
+				totals[next + store.getDescriptionCode(row) * numParameters
+						+ parameter]++;
+				totals[next + numDescriptions * numParameters + parameter]++;
+			}
+		}
+	}
+
+	// number of rows of the store when the index was built. rows added to
+	// the store after that are not in it
+	public int getNumRows() {
+		return order.length;
+	}
+
+	// position in date order of the first row on or after the given day,
+	// so the rows of a window of days are those from the position of its
+	// first day up to the position of the day after its last
+	public int position(long day) {
+		return dayStarts[firstDayAtOrAfter(day)];
+	}
+
+	// the row of the store at a position in date order
+	public int row(int position) {
+		return order[position];
+	}
+
+	// day of the earliest and latest readings
+	public int getFirstDay() {
+		return days.length == 0 ? 0 : days[0];
+	}
+
+	public int getLastDay() {
+		return days.length == 0 ? 0 : days[days.length - 1];
+	}
+
+	// readings of each parameter on the given days that match the
+	// description and site. a code of -1 (a name that never appeared)
+	// matches nothing
+	public int[] countByParameter(int descriptionCode, int siteCode,
+			DateRange dates) {
+		int[] counts = new int[numParameters];
+		if (descriptionCode == -1 || siteCode == -1
+				|| descriptionCode >= numDescriptions
+				|| siteCode >= numSites) {
+			return counts;
+		}
+		for (int w = 0; w < dates.size(); w++) {
+			int from = firstDayAtOrAfter(dates.getFrom(w));
+			int to = firstDayAtOrAfter(dates.getTo(w) + 1L);
+			if (siteCode == ALL) {
+				int slot = (descriptionCode == ALL ? numDescriptions
+						: descriptionCode) * numParameters;
+				int start = from * (numDescriptions + 1) * numParameters + slot;
+				int end = to * (numDescriptions + 1) * numParameters + slot;
+				for (int p = 0; p < numParameters; p++) {
+					counts[p] += totals[end + p] - totals[start + p];
+				}
+			} else {
+				for (int i = dayStarts[from]; i < dayStarts[to]; i++) {
+					int row = order[i];
+					if (store.getSiteCode(row) == siteCode
+							&& (descriptionCode == ALL
+							|| store.getDescriptionCode(row)
+							== descriptionCode)) {
+						counts[store.getParameterCode(row)]++;
+					}
+				}
+			}
+		}
+		return counts;
+	}
+
+	// the counts for every site at once, indexed by site code and then
+	// parameter code, with a single pass over the rows of the days
+	public int[][] countBySite(int descriptionCode, DateRange dates) {
+		int[][] counts = new int[numSites][numParameters];
+		if (descriptionCode == -1 || descriptionCode >= numDescriptions) {
+			return counts;
+		}
+		for (int w = 0; w < dates.size(); w++) {
+			int from = firstDayAtOrAfter(dates.getFrom(w));
+			int to = firstDayAtOrAfter(dates.getTo(w) + 1L);
+			for (int i = dayStarts[from]; i < dayStarts[to]; i++) {
+				int row = order[i];
+				if (descriptionCode == ALL
+						|| store.getDescriptionCode(row) == descriptionCode) {
+					counts[store.getSiteCode(row)]
+							[store.getParameterCode(row)]++;
+				}
+			}
+		}
+		return counts;
+	}
+
+	// index into days of the first day on or after the given one. a long
+	// so that one past the last possible day does not overflow
+	private int firstDayAtOrAfter(long day) {
+		int low = 0;
+		int high = days.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (days[middle] < day) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,249 @@
+// DateRange		Author: Garrett Reihner
+//
+// A set of days typed into the year field, kept as a sorted list of
+// windows of whole days (as days since 1/1/1970, both ends included). The
+// field used to take a single year. It now also takes
+//   2019-2022           every day of a range of years
+//   jun-aug, summer     only those months, in every year of the data
+//   2019-2022 jun-aug   only those months of those years
+//   last 90 days        the 90 days up to the latest reading
+//   3/1/2021-5/31/2021  any window of days, written like the data file
+// A month range such as dec-feb that wraps around the end of the year means
+// those months of each year, so it is split into two windows per year.
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+public class DateRange {
+	private static final String[] MONTHS = {"jan", "feb", "mar", "apr", "may",
+			"jun", "jul", "aug", "sep", "oct", "nov", "dec"};
+	// each season as the month range it stands for
+	private static final String[] SEASONS = {"spring", "summer", "fall",
+			"autumn", "winter"};
+	private static final String[] SEASON_MONTHS = {"mar-may", "jun-aug",
+			"sep-nov", "sep-nov", "dec-feb"};
+
+	private final int[] froms;	// first day of each window, in order
+	private final int[] tos;	// last day of each window
+	private final String text;	// what was typed, for the showing label
+	private final int year;		// the year if this is exactly one whole year
+
+	private DateRange(int[] froms, int[] tos, String text, int year) {
+		this.froms = froms;
+		this.tos = tos;
+		this.text = text;
+		this.year = year;
+	}
+
+	// every day of one year
+	public static DateRange ofYear(int year) {
+		return new DateRange(new int[] {ReadingStore.epochDay(year, 1, 1)},
+				new int[] {ReadingStore.epochDay(year, 12, 31)},
+				Integer.toString(year), year);
+	}
+
+	// a single window of days
+	public static DateRange of(int fromDay, int toDay) {
+		return new DateRange(new int[] {fromDay}, new int[] {toDay},
+				LocalDate.ofEpochDay(fromDay) + " to "
+				+ LocalDate.ofEpochDay(toDay), CountCube.ALL);
+	}
+
+	// reads what was typed into the year field. firstDay and lastDay are the
+	// days of the earliest and latest readings, which fill in the years when
+	// only months are given and the end of "last N days". throws an
+	// IllegalArgumentException if the text is not understood or none of its
+	// days are in the data
+	public static DateRange parse(String input, int firstDay, int lastDay) {
+		// any kind of dash separates the ends of a range
+		String text = input.trim().toLowerCase().replace('\u2013', '-')
+				.replace('\u2014', '-').replaceAll("\\s*-\\s*", "-");
+		String[] words = text.split("\\s+");
+		DateRange range;
+		if (words[0].equals("last")) {
+			range = last(words, lastDay);
+		} else if (text.indexOf('/') >= 0) {
+			range = window(text);
+		} else {
+			range = yearsAndMonths(words, firstDay, lastDay);
+		}
+		if (range.froms.length == 0 || range.froms[0] > lastDay
+				|| range.tos[range.tos.length - 1] < firstDay) {
+			throw new IllegalArgumentException("no readings in " + input);
+		}
+		return range;
+	}
+
+	// "last N" or "last N days"
+	private static DateRange last(String[] words, int lastDay) {
+		if (words.length < 2 || words.length > 3
+				|| (words.length == 3 && !words[2].startsWith("day"))) {
+			throw new IllegalArgumentException("expected last N days");
+		}
+		int days = Integer.parseInt(words[1]);
+		if (days <= 0) {
+			throw new IllegalArgumentException("expected last N days");
+		}
+		return new DateRange(new int[] {lastDay - days + 1},
+				new int[] {lastDay}, "last " + days + " days", CountCube.ALL);
+	}
+
+	// "M/D/YYYY-M/D/YYYY", or a single day
+	private static DateRange window(String text) {
+		String[] ends = text.split("-");
+		if (ends.length > 2) {
+			throw new IllegalArgumentException("expected M/D/YYYY-M/D/YYYY");
+		}
+		int from = day(ends[0]);
+		int to = day(ends[ends.length - 1]);
+		if (to < from) {
+			throw new IllegalArgumentException("window ends before it starts");
+		}
+		return new DateRange(new int[] {from}, new int[] {to}, text,
+				CountCube.ALL);
+	}
+
+	private static int day(String date) {
+		String[] parts = date.split("/");
+		if (parts.length != 3) {
+			throw new IllegalArgumentException("expected M/D/YYYY");
+		}
+		int month = Integer.parseInt(parts[0]);
+		int day = Integer.parseInt(parts[1]);
+		int year = Integer.parseInt(parts[2]);
+		// LocalDate checks that the day exists
+		return (int) LocalDate.of(year, month, day).toEpochDay();
+	}
+
+	// any mix of one year or range of years and one month, range of months
+	// or season, in either order
+	private static DateRange yearsAndMonths(String[] words, int firstDay,
+			int lastDay) {
+		int fromYear = LocalDate.ofEpochDay(firstDay).getYear();
+		int toYear = LocalDate.ofEpochDay(lastDay).getYear();
+		int fromMonth = 1;
+		int toMonth = 12;
+		boolean yearsGiven = false;
+		boolean monthsGiven = false;
+		for (String word : words) {
+			for (int i = 0; i < SEASONS.length; i++) {
+				if (word.equals(SEASONS[i])) {
+					word = SEASON_MONTHS[i];
+				}
+			}
+			String[] ends = word.split("-");
+			if (ends.length > 2 || word.isEmpty()) {
+				throw new IllegalArgumentException("cannot read " + word);
+			}
+			// years are the only values written with four digits
+			if (ends[0].length() == 4 && Character.isDigit(ends[0].charAt(0))
+					&& !yearsGiven) {
+				fromYear = Integer.parseInt(ends[0]);
+				toYear = Integer.parseInt(ends[ends.length - 1]);
+				if (toYear < fromYear) {
+					throw new IllegalArgumentException("years out of order");
+				}
+				yearsGiven = true;
+			} else if (!monthsGiven) {
+				fromMonth = month(ends[0]);
+				toMonth = month(ends[ends.length - 1]);
+				monthsGiven = true;
+			} else {
+				throw new IllegalArgumentException("cannot read " + word);
+			}
+		}
+
+		int[] froms = new int[(toYear - fromYear + 1) * 2];
+		int[] tos = new int[froms.length];
+		int windows = 0;
+		for (int year = fromYear; year <= toYear; year++) {
+			if (fromMonth <= toMonth) {
+				froms[windows] = ReadingStore.epochDay(year, fromMonth, 1);
+				tos[windows++] = lastDayOf(year, toMonth);
+			} else {
+				froms[windows] = ReadingStore.epochDay(year, 1, 1);
+				tos[windows++] = lastDayOf(year, toMonth);
+				froms[windows] = ReadingStore.epochDay(year, fromMonth, 1);
+				tos[windows++] = lastDayOf(year, 12);
+			}
+		}
+		// windows from neighbouring years that touch are joined, so a whole
+		// range of years is a single window
+		int joined = 0;
+		for (int i = 0; i < windows; i++) {
+			if (joined > 0 && froms[i] == tos[joined - 1] + 1) {
+				tos[joined - 1] = tos[i];
+			} else {
+				froms[joined] = froms[i];
+				tos[joined++] = tos[i];
+			}
+		}
+		boolean wholeYear = fromYear == toYear && fromMonth == 1
+				&& toMonth == 12;
+		return new DateRange(Arrays.copyOf(froms, joined),
+				Arrays.copyOf(tos, joined), String.join(" ", words),
+				wholeYear ? fromYear : CountCube.ALL);
+	}
+
+	// a month as a number from 1 to 12 or a name such as jun or june
+	private static int month(String word) {
+		if (Character.isDigit(word.charAt(0))) {
+			int month = Integer.parseInt(word);
+			if (month < 1 || month > 12) {
+				throw new IllegalArgumentException("no month " + word);
+			}
+			return month;
+		}
+		for (int i = 0; i < MONTHS.length; i++) {
+			if (word.length() >= 3 && MONTHS[i].startsWith(
+					word.substring(0, 3))) {
+				return i + 1;
+			}
+		}
+		throw new IllegalArgumentException("no month " + word);
+	}
+
+	private static int lastDayOf(int year, int month) {
+		return month == 12 ? ReadingStore.epochDay(year + 1, 1, 1) - 1
+				: ReadingStore.epochDay(year, month + 1, 1) - 1;
+	}
+
+	// number of windows
+	public int size() {
+		return froms.length;
+	}
+
+	public int getFrom(int window) {
+		return froms[window];
+	}
+
+	public int getTo(int window) {
+		return tos[window];
+	}
+
+	// the year if this is every day of exactly one year, which the count
+	// table can answer, or CountCube.ALL otherwise
+	public int getYear() {
+		return year;
+	}
+
+	// true if the day falls in one of the windows
+	public boolean contains(int day) {
+		int low = 0;
+		int high = froms.length;
+		// finds the first window starting after the day
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (froms[middle] <= day) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low > 0 && day <= tos[low - 1];
+	}
+
+	public String toString() {
+		return text;
+	}
+}
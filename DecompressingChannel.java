@@ -0,0 +1,275 @@
+// DecompressingChannel		Author: Garrett Reihner
+//
+// Reads a gzip or zstd compressed data file as if it were the plain text,
+// so the loader can parse it without decompressing it to disk first. The
+// format is told apart by the magic bytes at the start of the file. The
+// decompressing happens on a thread of its own, which fills large blocks
+// while the loader parses the blocks it filled before, so on a slow disk
+// the smaller compressed file is read and parsed in less time than the
+// plain text. Only a few blocks exist at once and they are reused, so
+// memory does not grow with the size of the file.
+//
+// The JDK only reads gzip. zstd is read with zstd-jni
+// (com.github.luben:zstd-jni) or aircompressor (io.airlift:aircompressor)
+// if either is on the class path. They are found by name, so neither is
+// needed to build or to read gzip.
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+public class DecompressingChannel implements ReadableByteChannel {
+	// size of each block of decompressed bytes, and how many there are
+	private static final int BLOCK_SIZE = 1 << 20;
+	private static final int NUM_BLOCKS = 4;
+	// size of the buffer the compressed file is read through
+	private static final int READ_SIZE = 1 << 16;
+
+	// classes that can read zstd, tried in order. each has a constructor
+	// taking the InputStream of compressed bytes
+	private static final String[] ZSTD_STREAMS = {
+			"com.github.luben.zstd.ZstdInputStream",
+			"io.airlift.compress.zstd.ZstdInputStream"};
+
+	// counts the compressed bytes the decompressor reads. only the
+	// decompressing thread reads through it
+	private static class CountingInputStream extends FilterInputStream {
+		volatile long count = 0;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		public int read(byte[] bytes, int offset, int length)
+				throws IOException {
+			int read = super.read(bytes, offset, length);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+	}
+
+	// a block of decompressed bytes handed from the decompressing thread to
+	// the reader. an empty block marks the end, and one with an error marks
+	// that decompressing failed
+	private static class Block {
+		final byte[] bytes = new byte[BLOCK_SIZE];
+		int length;
+		int read;	// bytes of this block already read
+		IOException error;
+	}
+
+	private final long compressedSize;
+	private final CountingInputStream compressed;
+
+	// filled blocks waiting to be read, and emptied blocks to fill again
+	private final BlockingQueue<Block> filled =
+			new ArrayBlockingQueue<Block>(NUM_BLOCKS);
+	private final BlockingQueue<Block> empty =
+			new ArrayBlockingQueue<Block>(NUM_BLOCKS);
+	private final Thread decompressor;
+	private Block current;		// block being read, or null
+	private boolean ended = false;
+	private boolean open = true;
+
+	private DecompressingChannel(Path file, CountingInputStream compressed,
+			InputStream decompressed) throws IOException {
+		compressedSize = Files.size(file);
+		this.compressed = compressed;
+		for (int i = 0; i < NUM_BLOCKS; i++) {
+			empty.add(new Block());
+		}
+		decompressor = new Thread(() -> decompress(decompressed),
+				"decompressor");
+		decompressor.setDaemon(true);
+		decompressor.start();
+	}
+
+	// true if the file starts with the magic bytes of gzip or zstd
+	public static boolean isCompressed(Path file) throws IOException {
+		return format(file) != null;
+	}
+
+	// opens a compressed file and starts decompressing it. throws an
+	// IOException if it is not compressed or is zstd with no zstd reader
+	// on the class path
+	public static DecompressingChannel open(Path file) throws IOException {
+		String format = format(file);
+		if (format == null) {
+			throw new IOException(file + " is not gzip or zstd compressed");
+		}
+		CountingInputStream counted = new CountingInputStream(
+				new BufferedInputStream(Files.newInputStream(file), READ_SIZE));
+		try {
+			return new DecompressingChannel(file, counted,
+					format.equals("gzip") ? new GZIPInputStream(counted,
+					READ_SIZE) : zstd(counted));
+		} catch (IOException | RuntimeException e) {
+			counted.close();
+			throw e;
+		}
+	}
+
+	// "gzip", "zstd" or null, from the first four bytes of the file
+	private static String format(Path file) throws IOException {
+		byte[] magic = new byte[4];
+		int read;
+		try (InputStream in = Files.newInputStream(file)) {
+			read = in.readNBytes(magic, 0, 4);
+		}
+		if (read >= 2 && (magic[0] & 0xff) == 0x1f
+				&& (magic[1] & 0xff) == 0x8b) {
+			return "gzip";
+		}
+		if (read == 4 && (magic[0] & 0xff) == 0x28
+				&& (magic[1] & 0xff) == 0xb5 && (magic[2] & 0xff) == 0x2f
+				&& (magic[3] & 0xff) == 0xfd) {
+			return "zstd";
+		}
+		return null;
+	}
+
+	// wraps the compressed bytes in the first zstd reader that is on the
+	// class path
+	private static InputStream zstd(InputStream compressed)
+			throws IOException {
+		for (String name : ZSTD_STREAMS) {
+			try {
+				return (InputStream) Class.forName(name)
+						.getConstructor(InputStream.class)
+						.newInstance(compressed);
+			} catch (ClassNotFoundException | NoSuchMethodException
+					| LinkageError e) {
+				// try the next one
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			} catch (ReflectiveOperationException e) {
+				throw new IOException(e);
+			}
+		}
+		throw new IOException("reading zstd needs zstd-jni or aircompressor "
+				+ "on the class path. decompress the file or use gzip");
+	}
+
+	// runs on the decompressing thread until the end of the file, an error
+	// or the channel being closed
+	private void decompress(InputStream in) {
+		try (InputStream decompressed = in) {
+			while (true) {
+				Block block = empty.take();
+				block.read = 0;
+				block.length = decompressed.readNBytes(block.bytes, 0,
+						BLOCK_SIZE);
+				filled.put(block);
+				if (block.length == 0) {
+					return;
+				}
+			}
+		} catch (IOException e) {
+			failed(e);
+		} catch (InterruptedException e) {
+			// closed before the end was reached
+		} catch (Throwable e) {
+			// anything else the decompressor throws, such as a runtime
+			// exception from a zstd reader loaded by reflection, still has
+			// to reach the reader, or it would wait for a block forever
+			failed(new IOException("decompressing failed: " + e, e));
+		}
+	}
+
+	// hands an error to the reader in place of the next block
+	private void failed(IOException e) {
+		try {
+			Block block = empty.take();
+			block.length = 0;
+			block.error = e;
+			filled.put(block);
+		} catch (InterruptedException closed) {
+			// nobody is reading any more
+		}
+	}
+
+	// copies decompressed bytes into the buffer, waiting for the
+	// decompressing thread if no block is ready. returns -1 at the end
+	public int read(ByteBuffer buffer) throws IOException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+		if (ended) {
+			return -1;
+		}
+		int total = 0;
+		while (buffer.hasRemaining()) {
+			if (current == null) {
+				// return what was copied rather than wait for more
+				current = total > 0 ? filled.poll() : take();
+				if (current == null) {
+					break;
+				}
+			}
+			if (current.error != null) {
+				throw current.error;
+			}
+			if (current.length == 0) {
+				ended = true;
+				break;
+			}
+			int count = Math.min(buffer.remaining(),
+					current.length - current.read);
+			buffer.put(current.bytes, current.read, count);
+			current.read += count;
+			total += count;
+			if (current.read == current.length) {
+				empty.add(current);
+				current = null;
+			}
+		}
+		return total == 0 && ended ? -1 : total;
+	}
+
+	private Block take() throws IOException {
+		try {
+			return filled.take();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	// compressed bytes read so far and in the whole file, for progress
+	public long getCompressedRead() {
+		return compressed.count;
+	}
+
+	public long getCompressedSize() {
+		return compressedSize;
+	}
+
+	public boolean isOpen() {
+		return open;
+	}
+
+	// stops the decompressing thread, which closes the file
+	public void close() {
+		open = false;
+		decompressor.interrupt();
+	}
+}
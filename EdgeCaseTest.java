@@ -0,0 +1,236 @@
+// EdgeCaseTest		Author: Garrett Reihner
+//
+// Checks the cases that are easy to get wrong and hard to see in the
+// window: data files that are still being written while they are loaded,
+// followed and snapshotted, damaged manifests and negative index values. Each check writes its own small files to a temporary
+// directory, prints ok or FAILED with what it expected, and the program
+// exits with status 1 if any of them failed.
+//
+// usage: java EdgeCaseTest
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class EdgeCaseTest {
+	private static final String HEADER = "_id\tdate\tsite\tparameter\t"
+			+ "index_value\tdescription\thealth_advisory\thealth_effects\n";
+
+	private Path directory;
+	private int failures = 0;
+
+	public static void main(String[] args) {
+		EdgeCaseTest test = new EdgeCaseTest();
+		try {
+			test.directory = Files.createTempDirectory("edgecases");
+			test.halfLineThenFinished(1);
+			test.halfLineThenFinished(4);
+			test.followerSkipsBadLines();
+			test.snapshotOfGrownFile();
+			test.damagedManifest();
+			test.negativeValuesInSeries();
+		} catch (IOException | InterruptedException e) {
+			System.out.println(e);
+			test.failures++;
+		}
+		System.out.println(test.failures == 0 ? "All checks passed" 
+				: test.failures + " checks failed");
+		if (test.failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	// a file whose last line is only half written when it is loaded for
+	// following: the half line is left out and the end offset stays at the
+	// last newline, then once the line is finished it is read whole
+	private void halfLineThenFinished(int parallelism) throws IOException {
+		String name = "half line, " + parallelism + " threads";
+		Path file = write("half" + parallelism + ".txt", HEADER
+				+ line(1, "1/1/2020", 10) + line(2, "1/2/2020", 20));
+		long whole = Files.size(file);
+		append(file, "3\t1/3/2020\tAva");
+
+		AirDataLoader loader = new AirDataLoader();
+		loader.setWholeLinesOnly(true);
+		loader.loadParallel(file.toString(), parallelism);
+		check(name + ": lines loaded", 2, loader.getNumReadings());
+		check(name + ": end offset", whole, loader.getEndOffset());
+		check(name + ": nothing appended yet", null, 
+				AirDataLoader.readAppended(file.toString(), 
+				loader.getEndOffset()));
+
+		append(file, "lon\tSO2\t30\tGood\t\t\n");
+		AirDataLoader part = AirDataLoader.readAppended(file.toString(), 
+				loader.getEndOffset());
+		check(name + ": finished line read", 1, 
+				part == null ? 0 : part.getNumReadings());
+		if (part != null) {
+			loader.append(part);
+			ReadingStore store = loader.getStore();
+			check(name + ": finished line id", 3, store.getId(2));
+			check(name + ": finished line index value", 30, 
+					store.getIndexValue(2));
+			check(name + ": finished line site", "Avalon", 
+					store.getSites().name(store.getSiteCode(2)));
+			check(name + ": end offset after", Files.size(file), 
+					loader.getEndOffset());
+		}
+
+		// without wholeLinesOnly a file that simply has no newline at the
+		// end still has its last line loaded
+		Path ended = write("noNewline" + parallelism + ".txt", HEADER
+				+ line(1, "1/1/2020", 10) + "2\t1/2/2020\tAvalon\tSO2\t20");
+		AirDataLoader all = new AirDataLoader();
+		all.loadParallel(ended.toString(), parallelism);
+		check(name + ": last line without newline", 2, all.getNumReadings());
+	}
+
+	// a badly formed appended line is reported and skipped, and the lines
+	// after it are still followed
+	private void followerSkipsBadLines() 
+			throws IOException, InterruptedException {
+		Path file = write("follow.txt", HEADER + line(1, "1/1/2020", 10));
+		AirDataLoader loader = new AirDataLoader();
+		loader.load(file.toString());
+		BlockingQueue<AirDataLoader> parts = 
+				new LinkedBlockingQueue<AirDataLoader>();
+		FileFollower follower = new FileFollower(file.toString(), 
+				loader.getEndOffset(), 10, parts::add);
+		follower.start();
+		try {
+			append(file, "2\tModerate\tAvalon\tSO2\t20\tGood\t\t\n");
+			append(file, line(3, "1/3/2020", 30));
+			AirDataLoader part = parts.poll(5, TimeUnit.SECONDS);
+			check("follower: reading after a bad line", 1, 
+					part == null ? 0 : part.getNumReadings());
+			if (part != null) {
+				check("follower: id after a bad line", 3, 
+						part.getStore().getId(0));
+			}
+			append(file, line(4, "1/4/2020", 40));
+			part = parts.poll(5, TimeUnit.SECONDS);
+			check("follower: next reading", 4, 
+					part == null ? 0 : part.getStore().getId(0));
+		} finally {
+			follower.close();
+		}
+	}
+
+	// a file that grows while it is parsed: the snapshot would hold only
+	// the readings parsed but match the grown file, so it is not kept, and
+	// the next load parses the whole file and snapshots that instead
+	private void snapshotOfGrownFile() throws IOException {
+		Path file = write("grown.txt", HEADER + line(1, "1/1/2020", 10) 
+				+ line(2, "1/2/2020", 20));
+		long size = Files.size(file);
+		long modified = Files.getLastModifiedTime(file).toMillis();
+		AirDataLoader loader = new AirDataLoader();
+		loader.load(file.toString());
+		append(file, line(3, "1/3/2020", 30));
+		SnapshotCache cache = new SnapshotCache(file.toString());
+		cache.write(loader.getStore(), loader.getMinYear(), 
+				loader.getMaxYear(), size, modified);
+		check("snapshot: not kept when the file grew", false, 
+				Files.exists(Paths.get(file + ".snapshot")));
+
+		AirDataLoader first = new AirDataLoader();
+		first.loadWithSnapshot(file.toString(), 1);
+		AirDataLoader second = new AirDataLoader();
+		second.loadWithSnapshot(file.toString(), 1);
+		check("snapshot: used once the file is whole", true, 
+				second.isFromSnapshot());
+		check("snapshot: readings", 3, second.getNumReadings());
+		check("snapshot: end offset", Files.size(file), 
+				second.getEndOffset());
+	}
+
+	// a manifest that was cut short or has a count that is far too big is
+	// read as no manifest at all, so every partition is read again and the
+	// manifest is written whole
+	private void damagedManifest() throws IOException {
+		Path years = Files.createDirectory(directory.resolve("years"));
+		write("years/2020.txt", HEADER + line(1, "1/1/2020", 10) 
+				+ line(2, "1/2/2020", 20));
+		write("years/2021.txt", HEADER + line(3, "1/1/2021", 30) 
+				+ line(4, "1/2/2021", 40));
+		new PartitionedDataset(years.toString()).open(1);
+		Path manifest = years.resolve(PartitionedDataset.MANIFEST);
+		byte[] whole = Files.readAllBytes(manifest);
+
+		// the partition count and the site count of the first partition
+		int partitionCount = 8;
+		int siteCount = 12 + 2 + "2020.txt".length() + 8 + 8 + 6 * 4;
+		for (int cut : new int[] {10, 20, whole.length / 2, 
+				whole.length - 1}) {
+			Files.write(manifest, Arrays.copyOf(whole, cut));
+			reopen(years, "manifest cut to " + cut + " bytes", whole.length);
+		}
+		for (int offset : new int[] {partitionCount, siteCount}) {
+			byte[] damaged = whole.clone();
+			damaged[offset] = 0x7f;
+			Files.write(manifest, damaged);
+			reopen(years, "manifest count at " + offset + " too big", 
+					whole.length);
+		}
+	}
+
+	private void reopen(Path years, String name, long manifestSize) 
+			throws IOException {
+		PartitionedDataset dataset = new PartitionedDataset(years.toString());
+		dataset.open(1);
+		check(name + ": readings", 4L, dataset.getNumReadings());
+		check(name + ": sites", 1, dataset.getSites().length);
+		check(name + ": rewritten", manifestSize, 
+				Files.size(years.resolve(PartitionedDataset.MANIFEST)));
+	}
+
+	// readings of one day are put in order of their index values, with
+	// negative ones first, so the day draws from its lowest to its highest
+	private void negativeValuesInSeries() throws IOException {
+		Path file = write("negative.txt", HEADER + line(1, "1/1/2020", 5) 
+				+ line(2, "1/1/2020", -3) + line(3, "1/1/2020", 2));
+		AirDataLoader loader = new AirDataLoader();
+		loader.load(file.toString());
+		TimeSeries series = TimeSeries.of(loader.getStore(), 0, 0);
+		double[] xs = new double[4];
+		double[] ys = new double[4];
+		int day = series.getFirstDay();
+		series.downsample(day, day + 1, 1, xs, ys);
+		check("series: first value of the day", -3.0, ys[0]);
+		check("series: last value of the day", 5.0, ys[3]);
+		check("series: highest value", 5, series.getMaxValue());
+	}
+
+	private static String line(int id, String date, int indexValue) {
+		return id + "\t" + date + "\tAvalon\tSO2\t" + indexValue 
+				+ "\tGood\t\t\n";
+	}
+
+	private Path write(String name, String text) throws IOException {
+		Path file = directory.resolve(name);
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static void append(Path file, String text) throws IOException {
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8), 
+				StandardOpenOption.APPEND);
+	}
+
+	private void check(String name, Object expected, Object actual) {
+		if (expected == null ? actual == null : expected.equals(actual)) {
+			System.out.println("ok " + name);
+		} else {
+			System.out.println("FAILED " + name + ": expected " + expected 
+					+ " but was " + actual);
+			failures++;
+		}
+	}
+}
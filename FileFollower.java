@@ -0,0 +1,94 @@
+// FileFollower		Author: Garrett Reihner
+//
+// Watches a data file for lines appended to it after it was loaded. The
+// file is checked on a background thread at a fixed interval, and whenever
+// it has grown, only the bytes past the last complete line already read are
+// parsed. The new readings are handed to a listener as a separate
+// AirDataLoader, which can then be appended to the loader that holds the
+// rest of the file.
+
+import java.io.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class FileFollower {
+	// receives the readings that were appended since the last check. it is
+	// called on the follower's own thread
+	public interface AppendListener {
+		void appended(AirDataLoader part);
+	}
+
+	private final String filename;
+	private final long intervalMillis;	// time between checks of the file
+	private final AppendListener listener;
+	private final ScheduledExecutorService timer;
+	private ScheduledFuture<?> checks;	// null while not following
+
+	// offset just past the last line handed to the listener. only the
+	// follower's thread uses it once following has started
+	private long offset;
+
+	// follows filename starting at the given offset, which is usually the
+	// end offset of the loader that read the file
+	public FileFollower(String filename, long startOffset, long intervalMillis,
+			AppendListener listener) {
+		this.filename = filename;
+		this.offset = startOffset;
+		this.intervalMillis = intervalMillis;
+		this.listener = listener;
+		timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "file follower");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public synchronized void start() {
+		if (checks == null) {
+			checks = timer.scheduleWithFixedDelay(this::check, 0,
+					intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// stops checking the file. it can be started again later and carries on
+	// from where it stopped
+	public synchronized void stop() {
+		if (checks != null) {
+			checks.cancel(false);
+			checks = null;
+		}
+	}
+
+	// stops checking for good and ends the follower's thread, such as when
+	// the file has been loaded again and a new follower takes over
+	public synchronized void close() {
+		stop();
+		timer.shutdown();
+	}
+
+	public synchronized boolean isFollowing() {
+		return checks != null;
+	}
+
+	// reads any complete lines added since the last check. badly formed
+	// lines are reported and skipped by readAppended, so the offset still
+	// moves past them even when no reading was found
+	private void check() {
+		try {
+			AirDataLoader part = AirDataLoader.readAppended(filename, offset);
+			if (part != null) {
+				offset = part.getEndOffset();
+				if (part.getNumReadings() > 0) {
+					listener.appended(part);
+				}
+			}
+		} catch (IOException e) {System.out.println(e);}
+		catch (RuntimeException e) {
+			// an error in the listener is reported without stopping the
+			// checks
+			System.out.println(e);
+		}
+	}
+}
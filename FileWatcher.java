@@ -0,0 +1,109 @@
+// FileWatcher		Author: Garrett Reihner
+//
+// Watches a data file, or the data files of a directory of partitions, for
+// any change at all: lines added, the file being rewritten or replaced, or
+// a partition being added, changed or deleted. Like FileFollower it checks
+// on a background thread at a fixed interval, but it reads nothing, only
+// the size and modification time of each file, which are folded into one
+// signature. The listener is told whenever the signature differs from the
+// one seen last.
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class FileWatcher {
+	// told that the data has changed, with the size of the data file now
+	// (or -1 for a directory). it is called on the watcher's own thread
+	public interface ChangeListener {
+		void changed(long size);
+	}
+
+	private final String filename;
+	private final long intervalMillis;	// time between checks of the file
+	private final ChangeListener listener;
+	private final ScheduledExecutorService timer;
+	private ScheduledFuture<?> checks;	// null while not watching
+
+	// the signature seen last. set by watch, then only used by the
+	// watcher's thread
+	private volatile long seen;
+
+	public FileWatcher(String filename, long intervalMillis,
+			ChangeListener listener) {
+		this.filename = filename;
+		this.intervalMillis = intervalMillis;
+		this.listener = listener;
+		timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "file watcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// starts (or carries on) watching, comparing against the given
+	// signature, usually the one taken just before the data was loaded so
+	// that a change made while it was loading is not missed
+	public synchronized void watch(long signature) {
+		seen = signature;
+		if (checks == null) {
+			checks = timer.scheduleWithFixedDelay(this::check, intervalMillis,
+					intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public synchronized void stop() {
+		if (checks != null) {
+			checks.cancel(false);
+			checks = null;
+		}
+	}
+
+	// the size and modification time of the file, or of every data file of
+	// the directory along with their names, folded into one number. it is
+	// 0 if the file is missing
+	public static long signature(String filename) throws IOException {
+		Path path = Paths.get(filename);
+		if (!Files.exists(path)) {
+			return 0;
+		}
+		if (!Files.isDirectory(path)) {
+			return signature(17, path);
+		}
+		long signature = 17;
+		for (Path file : PartitionedDataset.dataFiles(path)) {
+			signature = signature(signature * 31
+					+ file.getFileName().toString().hashCode(), file);
+		}
+		return signature;
+	}
+
+	private static long signature(long signature, Path file)
+			throws IOException {
+		signature = signature * 31 + Files.size(file);
+		return signature * 31 + Files.getLastModifiedTime(file).toMillis();
+	}
+
+	// compares the signature with the one seen last
+	private void check() {
+		try {
+			long signature = signature(filename);
+			if (signature != seen) {
+				seen = signature;
+				Path path = Paths.get(filename);
+				listener.changed(Files.isRegularFile(path)
+						? Files.size(path) : -1);
+			}
+		} catch (IOException e) {System.out.println(e);}
+		catch (RuntimeException e) {
+			// an error in the listener is reported without stopping the
+			// checks
+			System.out.println(e);
+		}
+	}
+}
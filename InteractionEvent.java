@@ -0,0 +1,42 @@
+// InteractionEvent		Author: Garrett Reihner
+//
+// A JFR event for one event handler of the window, such as a click on a
+// radio button or a bar, from when the handler is called until it returns.
+// Besides its duration it records how much of that time went into working
+// out the filtered values and into updating the bars, and how many bytes
+// the JavaFX Application Thread allocated while handling it. Events are
+// started and committed through DashboardStats like LoadPhaseEvent.
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("airquality.Interaction")
+@Label("Dashboard Interaction")
+@Category("Air Quality Dashboard")
+@Description("One event handler of the dashboard window")
+public class InteractionEvent extends Event {
+	@Label("Handler")
+	String handler;
+
+	@Label("Filter Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long filterTime;
+
+	@Label("Bar Update Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long barUpdateTime;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocated;
+
+	// System.nanoTime and the thread's allocated bytes when the handler was
+	// called. transient fields are not written to the recording
+	transient long startNanos;
+	transient long startAllocated;
+}
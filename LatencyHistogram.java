@@ -0,0 +1,97 @@
+// LatencyHistogram		Author: Garrett Reihner
+//
+// Counts values such as times in nanoseconds or sizes in bytes in buckets
+// that grow with the value, so the percentiles of anything from a few
+// nanoseconds to minutes can be kept in under a thousand counters. Every
+// power of two is split into 16 equal buckets, so a percentile is never
+// more than about 6% above the true value. Values can be recorded from
+// several threads at once, such as the loading thread and the JavaFX
+// Application Thread, while JConsole reads the percentiles.
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+	// each power of two is split into 2^SUB_BITS buckets
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int NUM_BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	// counts one value. negative values are counted as 0
+	public void record(long value) {
+		value = Math.max(0, value);
+		buckets.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / (double) n;
+	}
+
+	// the value that the given fraction (such as 0.99) of the recorded
+	// values are at or below, as the top of the bucket it falls in, or 0
+	// if nothing has been recorded
+	public long getPercentile(double fraction) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * n));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(max.get(), highest(i));
+			}
+		}
+		return max.get();
+	}
+
+	// forgets every value recorded so far
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	// values below SUB_BUCKETS get a bucket each. above that, the highest
+	// set bit picks the power of two and the next SUB_BITS bits the bucket
+	// within it
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS
+				+ (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	// the highest value that falls in a bucket
+	private static long highest(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,35 @@
+// LoadPhaseEvent		Author: Garrett Reihner
+//
+// A JFR event for one phase of loading the data, such as parsing the text,
+// merging the parts parsed in parallel, reading a snapshot or building the
+// count table. The phases that read the data file also record how many
+// rows and bytes they read. Events are started and committed through
+// DashboardStats, which also adds them to the totals shown over JMX, so
+// they show up in any JFR recording of the dashboard without changing it.
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("airquality.LoadPhase")
+@Label("Load Phase")
+@Category("Air Quality Dashboard")
+@Description("One phase of loading the air quality data")
+public class LoadPhaseEvent extends Event {
+	@Label("Phase")
+	String phase;
+
+	@Label("Rows Read")
+	long rows;
+
+	@Label("Bytes Read")
+	@DataAmount
+	long bytes;
+
+	// System.nanoTime when the phase began, for the JMX totals. transient
+	// fields are not written to the recording
+	transient long startNanos;
+}
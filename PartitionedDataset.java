@@ -0,0 +1,653 @@
+// PartitionedDataset		Author: Garrett Reihner
+//
+// A directory of data files, usually one per year or month, read as one
+// set of readings. A small manifest file in the directory keeps for every
+// partition its size and modification time, number of readings, year and
+// day bounds, highest index value, sites, parameters and descriptions, and
+// its counts by description, site and parameter. Opening the directory
+// only reads the manifest, so the sites, parameters and every count over
+// whole partitions (such as the "All" view, a site, or a year when the
+// partitions are years or months) are known without reading any readings.
+// Partitions are only read when a filter needs their readings, such as a
+// range of days that cuts through a partition or a metric other than
+// Count, and only the partitions with readings on the filtered days are
+// read. They are read the first time they are needed and then added to one
+// AirDataLoader, whose codes are given in manifest order up front so they
+// are the same whichever partition arrives first.
+//
+// A partition whose size or modification time no longer matches the
+// manifest, or that is new, is read once when the directory is opened to
+// bring the manifest up to date, and is kept for the loader since it had
+// to be read anyway. The data files themselves are read with
+// AirDataLoader.loadWithSnapshot, so a partition read again in a later
+// launch comes from its snapshot sidecar.
+//
+// Manifest layout (big endian, as written by DataOutputStream):
+//   magic, version, number of partitions, then for each partition:
+//   file name, size, mtime, readings, min year, max year, first day,
+//   last day, highest index value, site, parameter and description names,
+//   counts[(description * sites + site) * parameters + parameter]
+
+import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+public class PartitionedDataset {
+	// name of the manifest file in the directory
+	public static final String MANIFEST = "dataset.manifest";
+	// pass ALL in place of a code to leave that filter off
+	public static final int ALL = Integer.MIN_VALUE;
+
+	private static final int MAGIC = 0x41515044;	// "AQPD"
+	// bump this whenever the layout above changes so old manifests are
+	// rebuilt
+	private static final int VERSION = 1;
+	// fewest bytes a partition takes in the manifest: an empty name, the
+	// size and modification time, six ints and three empty name lists
+	private static final int PARTITION_SIZE = 2 + 8 + 8 + 6 * 4 + 3 * 4;
+
+	// one data file of the directory and what the manifest knows about it
+	public static class Partition {
+		private String name;
+		private long size;
+		private long modified;
+		private int numReadings;
+		private int minYear;
+		private int maxYear;
+		private int firstDay;
+		private int lastDay;
+		private int maxIndexValue;
+		private String[] sites;
+		private String[] parameters;
+		private String[] descriptions;
+		// counts in the partition's own codes, as laid out in the manifest
+		private int[] counts;
+
+		// the same counts in the dataset's codes, with an extra "all" slot
+		// on the description and site axes like CountCube:
+		// cells[(description * (numSites + 1) + site) * numParameters
+		// + parameter]
+		private int[] cells;
+
+		// the readings once read, until they are added to the loader
+		private AirDataLoader read;
+		private volatile boolean added = false;
+
+		public String getName() {
+			return name;
+		}
+
+		public int getNumReadings() {
+			return numReadings;
+		}
+
+		public int getFirstDay() {
+			return firstDay;
+		}
+
+		public int getLastDay() {
+			return lastDay;
+		}
+
+		// whether the partition's readings are in the loader
+		public boolean isAdded() {
+			return added;
+		}
+	}
+
+	private final Path directory;
+	private final ArrayList<Partition> partitions = new ArrayList<Partition>();
+	// holds the readings of the partitions added so far
+	private final AirDataLoader loader = new AirDataLoader();
+	private int parallelism = 1;
+
+	// every site, parameter and description of every partition, in the
+	// order the partitions (sorted by file name) first have them
+	private StringDictionary sites = new StringDictionary();
+	private StringDictionary parameters = new StringDictionary();
+	private StringDictionary descriptions = new StringDictionary();
+
+	public PartitionedDataset(String directory) {
+		this.directory = Paths.get(directory);
+	}
+
+	// true if the data is a directory of partitions rather than one file
+	public static boolean isPartitioned(String filename) {
+		return Files.isDirectory(Paths.get(filename));
+	}
+
+	// reads the manifest, reads any partition that is new or has changed
+	// since it was written (with the given number of parsing threads) and
+	// saves the manifest again if it had to be brought up to date
+	public void open(int parallelism) throws IOException {
+		this.parallelism = parallelism;
+		LoadPhaseEvent phase = DashboardStats.beginPhase("manifest read");
+		HashMap<String, Partition> known = readManifest();
+		DashboardStats.endPhase(phase, 0, manifestSize());
+
+		boolean changed = false;
+		for (Path file : dataFiles(directory)) {
+			String name = file.getFileName().toString();
+			Partition partition = known.remove(name);
+			if (partition == null || partition.size != Files.size(file)
+					|| partition.modified
+					!= Files.getLastModifiedTime(file).toMillis()) {
+				partition = summarize(file);
+				changed = true;
+			}
+			partitions.add(partition);
+		}
+		// partitions that were deleted are dropped from the manifest
+		if (changed || !known.isEmpty()) {
+			phase = DashboardStats.beginPhase("manifest write");
+			try {
+				writeManifest();
+			} catch (IOException e) {System.out.println(e);}
+			DashboardStats.endPhase(phase);
+		}
+
+		for (Partition partition : partitions) {
+			for (String name : partition.sites) {
+				sites.add(name, 0);
+			}
+			for (String name : partition.parameters) {
+				parameters.add(name, 0);
+			}
+			for (String name : partition.descriptions) {
+				descriptions.add(name, 0);
+			}
+		}
+		for (Partition partition : partitions) {
+			translate(partition);
+		}
+		loader.addNames(sites.names(), parameters.names(),
+				descriptions.names());
+	}
+
+	// the data files of a directory, sorted by name. the manifest and the
+	// snapshot sidecars are not partitions
+	public static List<Path> dataFiles(Path directory) throws IOException {
+		ArrayList<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> entries =
+				Files.newDirectoryStream(directory)) {
+			for (Path file : entries) {
+				String name = file.getFileName().toString();
+				if (Files.isRegularFile(file) && !name.equals(MANIFEST)
+						&& !name.endsWith(".snapshot")
+						&& !name.endsWith(".tmp") && !name.startsWith(".")) {
+					files.add(file);
+				}
+			}
+		}
+		files.sort(null);
+		return files;
+	}
+
+	// reads a partition to work out its manifest entry. the readings are
+	// kept so they do not have to be read again to be added
+	private Partition summarize(Path file) throws IOException {
+		Partition partition = new Partition();
+		partition.name = file.getFileName().toString();
+		AirDataLoader part = new AirDataLoader();
+		part.loadWithSnapshot(file.toString(), parallelism);
+		ReadingStore store = part.getStore();
+		partition.size = Files.size(file);
+		partition.modified = Files.getLastModifiedTime(file).toMillis();
+		partition.numReadings = store.size();
+		partition.minYear = part.getMinYear();
+		partition.maxYear = part.getMaxYear();
+		partition.sites = part.getSites();
+		partition.parameters = part.getParameters();
+		partition.descriptions = store.getDescriptions().names();
+
+		int numSites = partition.sites.length;
+		int numParameters = partition.parameters.length;
+		partition.counts = new int[partition.descriptions.length * numSites
+				* numParameters];
+		partition.firstDay = Integer.MAX_VALUE;
+		partition.lastDay = Integer.MIN_VALUE;
+		for (int row = 0; row < store.size(); row++) {
+			partition.counts[(store.getDescriptionCode(row) * numSites
+					+ store.getSiteCode(row)) * numParameters
+					+ store.getParameterCode(row)]++;
+			partition.firstDay = Math.min(partition.firstDay,
+					store.getDay(row));
+			partition.lastDay = Math.max(partition.lastDay, store.getDay(row));
+			partition.maxIndexValue = Math.max(partition.maxIndexValue,
+					store.getIndexValue(row));
+		}
+		partition.read = part;
+		return partition;
+	}
+
+	// works out the partition's counts in the dataset's codes, adding up
+	// the "all" slots
+	private void translate(Partition partition) {
+		int numSites = sites.size();
+		int numParameters = parameters.size();
+		int numDescriptions = descriptions.size();
+		int[] siteCodes = codes(partition.sites, sites);
+		int[] parameterCodes = codes(partition.parameters, parameters);
+		int[] descriptionCodes = codes(partition.descriptions, descriptions);
+		int[] cells = new int[(numDescriptions + 1) * (numSites + 1)
+				* numParameters];
+		int ownSites = partition.sites.length;
+		int ownParameters = partition.parameters.length;
+		for (int d = 0; d < partition.descriptions.length; d++) {
+			for (int s = 0; s < ownSites; s++) {
+				for (int p = 0; p < ownParameters; p++) {
+					int count = partition.counts[(d * ownSites + s)
+							* ownParameters + p];
+					int parameter = parameterCodes[p];
+					// the count goes into its own cell and the ones where
+					// the description, the site or both are "all"
+					for (int combo = 0; combo < 4; combo++) {
+						int description = (combo & 1) == 0
+								? descriptionCodes[d] : numDescriptions;
+						int site = (combo & 2) == 0 ? siteCodes[s] : numSites;
+						cells[(description * (numSites + 1) + site)
+								* numParameters + parameter] += count;
+					}
+				}
+			}
+		}
+		partition.cells = cells;
+	}
+
+	private static int[] codes(String[] names, StringDictionary dictionary) {
+		int[] codes = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			codes[i] = dictionary.code(names[i]);
+		}
+		return codes;
+	}
+
+	// true if the readings of every partition with readings on the days
+	// are all on those days, so counts for them can come from the manifest.
+	// null means every day
+	public boolean covers(DateRange dates) {
+		if (dates == null) {
+			return true;
+		}
+		for (Partition partition : partitions) {
+			if (overlaps(partition, dates) && !inside(partition, dates)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// readings of each parameter on the days that match the description
+	// and site, from the manifest. the days have to be ones that covers
+	// is true for. a code of -1 matches nothing
+	public int[] countByParameter(int descriptionCode, int siteCode,
+			DateRange dates) {
+		int numParameters = parameters.size();
+		int[] counts = new int[numParameters];
+		int start = start(descriptionCode, siteCode);
+		if (start == -1) {
+			return counts;
+		}
+		for (Partition partition : partitions) {
+			if (dates == null || overlaps(partition, dates)) {
+				for (int p = 0; p < numParameters; p++) {
+					counts[p] += partition.cells[start + p];
+				}
+			}
+		}
+		return counts;
+	}
+
+	// the counts for every site at once, indexed by site code and then
+	// parameter code, from the manifest like countByParameter
+	public int[][] countBySite(int descriptionCode, DateRange dates) {
+		int[][] counts = new int[sites.size()][];
+		for (int s = 0; s < counts.length; s++) {
+			counts[s] = countByParameter(descriptionCode, s, dates);
+		}
+		return counts;
+	}
+
+	// offset of the first parameter's cell for the filters, or -1 if a code
+	// is out of range
+	private int start(int descriptionCode, int siteCode) {
+		int numSites = sites.size();
+		int numDescriptions = descriptions.size();
+		int d = descriptionCode == ALL ? numDescriptions : descriptionCode;
+		int s = siteCode == ALL ? numSites : siteCode;
+		if (d < 0 || d > numDescriptions || s < 0 || s > numSites) {
+			return -1;
+		}
+		return (d * (numSites + 1) + s) * parameters.size();
+	}
+
+	// the partitions with readings on the days (every one for null) that
+	// have not been added to the loader yet
+	public List<Partition> missing(DateRange dates) {
+		ArrayList<Partition> missing = new ArrayList<Partition>();
+		for (Partition partition : partitions) {
+			if (!partition.added
+					&& (dates == null || overlaps(partition, dates))) {
+				missing.add(partition);
+			}
+		}
+		return missing;
+	}
+
+	// the same, but against a list of the partitions that were added when
+	// a DatasetSnapshot was taken rather than the ones added by now
+	public List<Partition> missing(DateRange dates, List<Partition> added) {
+		ArrayList<Partition> missing = new ArrayList<Partition>();
+		for (Partition partition : partitions) {
+			if (!added.contains(partition)
+					&& (dates == null || overlaps(partition, dates))) {
+				missing.add(partition);
+			}
+		}
+		return missing;
+	}
+
+	// the partitions added to the loader so far, in the order of
+	// getPartitions
+	public List<Partition> getAdded() {
+		ArrayList<Partition> added = new ArrayList<Partition>();
+		for (Partition partition : partitions) {
+			if (partition.added) {
+				added.add(partition);
+			}
+		}
+		return added;
+	}
+
+	// reads the readings of the partitions, or takes them if they were
+	// already read, so they can be handed to add. it can be called on any
+	// thread and stops between partitions with a CancellationException if
+	// the thread is interrupted
+	public AirDataLoader[] read(List<Partition> missing) throws IOException {
+		AirDataLoader[] parts = new AirDataLoader[missing.size()];
+		for (int i = 0; i < parts.length; i++) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new CancellationException("partition read interrupted");
+			}
+			parts[i] = read(missing.get(i));
+		}
+		return parts;
+	}
+
+	// one partition's readings. two threads reading the same partition at
+	// once wait for each other rather than both reading it
+	private AirDataLoader read(Partition partition) throws IOException {
+		synchronized (partition) {
+			if (partition.read == null) {
+				AirDataLoader part = new AirDataLoader();
+				part.loadWithSnapshot(directory.resolve(partition.name)
+						.toString(), parallelism);
+				partition.read = part;
+			}
+			return partition.read;
+		}
+	}
+
+	// adds the readings of a partition that was read to the loader, unless
+	// they are already in it. it is called on the thread that owns the
+	// loader. returns the row of the first added reading, or -1 if nothing
+	// was added
+	public int add(Partition partition, AirDataLoader part) {
+		if (partition.added) {
+			return -1;
+		}
+		int firstRow = loader.append(part);
+		synchronized (partition) {
+			partition.read = null;
+		}
+		partition.added = true;
+		return firstRow;
+	}
+
+	// adds every partition that was read when the manifest was brought up
+	// to date, since their readings are in memory anyway. it is called on
+	// the thread that owns the loader, like add
+	public void addRead() {
+		for (Partition partition : partitions) {
+			AirDataLoader part;
+			synchronized (partition) {
+				part = partition.read;
+			}
+			if (part != null) {
+				add(partition, part);
+			}
+		}
+	}
+
+	// the readings of every partition that has been added so far. its
+	// codes are the same as the dataset's
+	public AirDataLoader getLoader() {
+		return loader;
+	}
+
+	// true if one of the partition's days is on the given days
+	private static boolean overlaps(Partition partition, DateRange dates) {
+		for (int w = 0; w < dates.size(); w++) {
+			if (dates.getFrom(w) <= partition.lastDay
+					&& dates.getTo(w) >= partition.firstDay) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// true if all of the partition's days are on the given days
+	private static boolean inside(Partition partition, DateRange dates) {
+		for (int w = 0; w < dates.size(); w++) {
+			if (dates.getFrom(w) <= partition.firstDay
+					&& dates.getTo(w) >= partition.lastDay) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public List<Partition> getPartitions() {
+		return partitions;
+	}
+
+	// number of partitions that have been added to the loader
+	public int getNumAdded() {
+		int added = 0;
+		for (Partition partition : partitions) {
+			if (partition.added) {
+				added++;
+			}
+		}
+		return added;
+	}
+
+	public long getNumReadings() {
+		long readings = 0;
+		for (Partition partition : partitions) {
+			readings += partition.numReadings;
+		}
+		return readings;
+	}
+
+	public int getMinYear() {
+		int minYear = 10000;
+		for (Partition partition : partitions) {
+			minYear = Math.min(minYear, partition.minYear);
+		}
+		return minYear;
+	}
+
+	public int getMaxYear() {
+		int maxYear = 0;
+		for (Partition partition : partitions) {
+			maxYear = Math.max(maxYear, partition.maxYear);
+		}
+		return maxYear;
+	}
+
+	// day of the earliest and latest readings
+	public int getFirstDay() {
+		int firstDay = Integer.MAX_VALUE;
+		for (Partition partition : partitions) {
+			firstDay = Math.min(firstDay, partition.firstDay);
+		}
+		return firstDay;
+	}
+
+	public int getLastDay() {
+		int lastDay = Integer.MIN_VALUE;
+		for (Partition partition : partitions) {
+			lastDay = Math.max(lastDay, partition.lastDay);
+		}
+		return lastDay;
+	}
+
+	public int getMaxIndexValue() {
+		int maxIndexValue = 0;
+		for (Partition partition : partitions) {
+			maxIndexValue = Math.max(maxIndexValue, partition.maxIndexValue);
+		}
+		return maxIndexValue;
+	}
+
+	// unique sites in the order the partitions first have them
+	public String[] getSites() {
+		return sites.names();
+	}
+
+	// unique parameters in the order the partitions first have them
+	public String[] getParameters() {
+		return parameters.names();
+	}
+
+	// number of readings of each parameter in every partition, in the same
+	// order as getParameters
+	public int[] getParameterCounts() {
+		return countByParameter(ALL, ALL, null);
+	}
+
+	private long manifestSize() throws IOException {
+		Path manifest = directory.resolve(MANIFEST);
+		return Files.exists(manifest) ? Files.size(manifest) : 0;
+	}
+
+	// the partitions of the manifest by file name, or none if there is no
+	// manifest or it is another version or cannot be read. every count and
+	// length is checked against the size of the manifest before anything
+	// is allocated for it, so a truncated or damaged one is rebuilt
+	private HashMap<String, Partition> readManifest() {
+		HashMap<String, Partition> known = new HashMap<String, Partition>();
+		Path manifest = directory.resolve(MANIFEST);
+		if (!Files.exists(manifest)) {
+			return known;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(manifest)))) {
+			long limit = Files.size(manifest);
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return known;
+			}
+			int numPartitions = readCount(in, limit, PARTITION_SIZE);
+			for (int i = 0; i < numPartitions; i++) {
+				Partition partition = new Partition();
+				partition.name = in.readUTF();
+				partition.size = in.readLong();
+				partition.modified = in.readLong();
+				partition.numReadings = in.readInt();
+				partition.minYear = in.readInt();
+				partition.maxYear = in.readInt();
+				partition.firstDay = in.readInt();
+				partition.lastDay = in.readInt();
+				partition.maxIndexValue = in.readInt();
+				partition.sites = readNames(in, limit);
+				partition.parameters = readNames(in, limit);
+				partition.descriptions = readNames(in, limit);
+				long numCounts = (long) partition.descriptions.length
+						* partition.sites.length
+						* partition.parameters.length;
+				if (numCounts * 4 > limit) {
+					throw new IllegalArgumentException("bad count table size");
+				}
+				partition.counts = new int[(int) numCounts];
+				for (int c = 0; c < partition.counts.length; c++) {
+					partition.counts[c] = in.readInt();
+				}
+				known.put(partition.name, partition);
+			}
+		} catch (IOException | RuntimeException e) {
+			// a damaged manifest is rebuilt like a missing one
+			System.out.println(e);
+			known.clear();
+		}
+		return known;
+	}
+
+	// writes the manifest to a temporary file first and moves it into
+	// place, so a reader never sees half of one
+	private void writeManifest() throws IOException {
+		Path manifest = directory.resolve(MANIFEST);
+		Path temp = directory.resolve(MANIFEST + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(partitions.size());
+			for (Partition partition : partitions) {
+				out.writeUTF(partition.name);
+				out.writeLong(partition.size);
+				out.writeLong(partition.modified);
+				out.writeInt(partition.numReadings);
+				out.writeInt(partition.minYear);
+				out.writeInt(partition.maxYear);
+				out.writeInt(partition.firstDay);
+				out.writeInt(partition.lastDay);
+				out.writeInt(partition.maxIndexValue);
+				writeNames(out, partition.sites);
+				writeNames(out, partition.parameters);
+				writeNames(out, partition.descriptions);
+				for (int count : partition.counts) {
+					out.writeInt(count);
+				}
+			}
+		}
+		Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeNames(DataOutputStream out, String[] names)
+			throws IOException {
+		out.writeInt(names.length);
+		for (String name : names) {
+			out.writeUTF(name);
+		}
+	}
+
+	private static String[] readNames(DataInputStream in, long limit)
+			throws IOException {
+		// every name takes at least its two byte length
+		String[] names = new String[readCount(in, limit, 2)];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = in.readUTF();
+		}
+		return names;
+	}
+
+	// a count of things that each take at least itemSize bytes, which
+	// cannot be more than a manifest of limit bytes holds
+	private static int readCount(DataInputStream in, long limit, int itemSize)
+			throws IOException {
+		int count = in.readInt();
+		if (count < 0 || (long) count * itemSize > limit) {
+			throw new IllegalArgumentException("bad count " + count);
+		}
+		return count;
+	}
+}
@@ -0,0 +1,134 @@
+// QueryRunner		Author: Garrett Reihner
+//
+// Runs the filter queries of the window away from the JavaFX Application
+// Thread, so a slow filter never freezes the window. Only the newest query
+// matters: submitting one supersedes the one before it, which is
+// interrupted if it is still running, and a result is only handed back if
+// no newer query was submitted by the time it arrives. Quick clicks
+// therefore cost at most one finished query each instead of a queue of
+// full scans, and a query that stalls never holds up the ones after it.
+// The queries run on virtual threads when the JVM has them (Java 21 and
+// later), found by name so this still builds and runs on older JVMs, which
+// get a pool of daemon threads instead.
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class QueryRunner {
+	private final ExecutorService executor;
+	private final boolean virtual;		// true if on virtual threads
+	// runs the results, such as Platform::runLater for the window
+	private final Executor deliverer;
+
+	// number of the newest query. a query whose number is not this one
+	// any more has been superseded
+	private final AtomicLong latest = new AtomicLong();
+	private Future<?> running;		// the newest query, or null
+
+	private final AtomicLong completed = new AtomicLong();	// delivered
+	private final AtomicLong superseded = new AtomicLong();	// dropped
+
+	// queries run on threads of the given name, and their results and
+	// errors are handed to the deliverer
+	public QueryRunner(String name, Executor deliverer) {
+		this.deliverer = deliverer;
+		ExecutorService threads = virtualThreads();
+		virtual = threads != null;
+		if (threads == null) {
+			threads = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		executor = threads;
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor, or null before Java 21
+	static ExecutorService virtualThreads() {
+		try {
+			Method method = Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	// runs the query, superseding every query submitted before it. its
+	// result goes to onResult, or an exception it throws to onError, both
+	// through the deliverer and only if no newer query has been submitted
+	// by then. a long query can check whether its thread was interrupted
+	// to stop early once it has been superseded
+	public synchronized <T> void submit(Callable<T> query,
+			Consumer<T> onResult, Consumer<Exception> onError) {
+		long number = latest.incrementAndGet();
+		if (running != null) {
+			running.cancel(true);
+		}
+		running = executor.submit(() -> {
+			if (number != latest.get()) {
+				superseded.incrementAndGet();
+				return;
+			}
+			try {
+				T result = query.call();
+				deliver(number, () -> onResult.accept(result));
+			} catch (Exception e) {
+				deliver(number, () -> onError.accept(e));
+			}
+		});
+	}
+
+	// hands a result over unless a newer query was submitted. it is
+	// checked again once the deliverer runs it, since one may have been
+	// submitted in between
+	private void deliver(long number, Runnable result) {
+		if (number != latest.get()) {
+			superseded.incrementAndGet();
+			return;
+		}
+		deliverer.execute(() -> {
+			if (number == latest.get()) {
+				completed.incrementAndGet();
+				result.run();
+			} else {
+				superseded.incrementAndGet();
+			}
+		});
+	}
+
+	// supersedes the newest query without submitting another
+	public synchronized void cancel() {
+		latest.incrementAndGet();
+		if (running != null) {
+			running.cancel(true);
+			running = null;
+		}
+	}
+
+	// whether the queries run on virtual threads
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	public long getSuperseded() {
+		return superseded.get();
+	}
+
+	public String toString() {
+		return completed.get() + " queries shown, " + superseded.get()
+				+ " superseded ("
+				+ (virtual ? "virtual threads" : "thread pool") + ")";
+	}
+}
@@ -7,6 +7,7 @@
 public class ReadingGDR {
 	private int id; // id number of the entry
 	private int year; // year of the entry
+	private int day; // full date of the entry as days since 1/1/1970
 	private String site; // neighborhood where the data was collected
 	private String parameter; // Air quality or temperature measured
 	private int indexValue; // air quality index of the instance
@@ -14,24 +15,38 @@ public class ReadingGDR {
 	private String healthAdvisory; // notes on any health advisory
 	private String healthEffects; // notes on any health effects
 	
+	// only the year of the entry is known, so it is placed on 1/1 of it
 	public ReadingGDR(int numId, int dateEntry, String location, String para,
 			int index, String descr, String advisory, String effects) {
+		this(numId, dateEntry, ReadingStore.epochDay(dateEntry, 1, 1),
+				location, para, index, descr, advisory, effects);
+	}
+	
+	// the same, but keeping the full date of the entry as an epoch day
+	// rather than only its year
+	public ReadingGDR(int numId, int dateEntry, int epochDay, String location,
+			String para, int index, String descr, String advisory,
+			String effects) {
 		
 		id = numId;
 		year = dateEntry;
+		day = epochDay;
 		site = location;
 		parameter = para;
 		indexValue = index;
-		// handles the potential for text file to contain more than just
-		// "Unhealthy" values
+		description = normalizeDescription(descr);
+		healthAdvisory = advisory;
+		healthEffects = effects;		
+	}
+	
+	// handles the potential for text file to contain more than just
+	// "Unhealthy" values
+	public static String normalizeDescription(String descr) {
 		if (descr.equals("Unhealthy for Sensitive Groups") || 
 				descr.equals("Very Unhealthy")) {
-			description = "Unhealthy";
-		}else {
-			description = descr;
+			return "Unhealthy";
 		}
-		healthAdvisory = advisory;
-		healthEffects = effects;		
+		return descr;
 	}
 	
 	// used to filter data based on the description
@@ -54,4 +69,14 @@ public class ReadingGDR {
 		return year;
 	}
 	
+	// used to place the entry on a time series
+	public int getDay() {
+		return day;
+	}
+	
+	// the air quality index that the description was given for
+	public int getIndexValue() {
+		return indexValue;
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,141 @@
+// ReadingStatistics		Author: Garrett Reihner
+//
+// Counts the readings of a data file by site, parameter and year, with the
+// sum of their index values for the averages, instead of keeping the
+// readings themselves. Its size depends only on the number of unique sites,
+// parameters and years, so a file far bigger than the heap can be
+// summarized in a single pass (see AirDataLoader.setStatisticsOnly). The
+// counts are longs since such a file can have more readings than an int
+// holds.
+
+import java.util.Arrays;
+
+public class ReadingStatistics {
+	private long numReadings = 0;
+
+	// readings and index value sums by site code and by parameter code
+	private long[] siteReadings = new long[16];
+	private long[] siteSums = new long[16];
+	private long[] parameterReadings = new long[16];
+
+	// readings and index value sums by year, from firstYear on
+	private int firstYear = 0;
+	private long[] yearReadings = new long[0];
+	private long[] yearSums = new long[0];
+
+	// counts one reading
+	public void add(int siteCode, int parameterCode, int year, int indexValue) {
+		if (siteCode >= siteReadings.length) {
+			siteReadings = Arrays.copyOf(siteReadings, siteCode * 2);
+			siteSums = Arrays.copyOf(siteSums, siteCode * 2);
+		}
+		if (parameterCode >= parameterReadings.length) {
+			parameterReadings = Arrays.copyOf(parameterReadings,
+					parameterCode * 2);
+		}
+		if (yearReadings.length == 0 || year < firstYear
+				|| year >= firstYear + yearReadings.length) {
+			growYears(year, year);
+		}
+		numReadings++;
+		siteReadings[siteCode]++;
+		siteSums[siteCode] += indexValue;
+		parameterReadings[parameterCode]++;
+		yearReadings[year - firstYear]++;
+		yearSums[year - firstYear] += indexValue;
+	}
+
+	// adds the counts of another part of the file, with its site and
+	// parameter codes translated through the given arrays (other code ->
+	// code here) like ReadingStore.addAll
+	public void addAll(ReadingStatistics other, int[] siteMap,
+			int[] parameterMap) {
+		numReadings += other.numReadings;
+		for (int code = 0; code < siteMap.length; code++) {
+			int site = siteMap[code];
+			if (site >= siteReadings.length) {
+				siteReadings = Arrays.copyOf(siteReadings, site * 2);
+				siteSums = Arrays.copyOf(siteSums, site * 2);
+			}
+			siteReadings[site] += other.siteReadings[code];
+			siteSums[site] += other.siteSums[code];
+		}
+		for (int code = 0; code < parameterMap.length; code++) {
+			int parameter = parameterMap[code];
+			if (parameter >= parameterReadings.length) {
+				parameterReadings = Arrays.copyOf(parameterReadings,
+						parameter * 2);
+			}
+			parameterReadings[parameter] += other.parameterReadings[code];
+		}
+		if (other.yearReadings.length > 0) {
+			growYears(other.firstYear,
+					other.firstYear + other.yearReadings.length - 1);
+			for (int i = 0; i < other.yearReadings.length; i++) {
+				yearReadings[other.firstYear - firstYear + i] +=
+						other.yearReadings[i];
+				yearSums[other.firstYear - firstYear + i] += other.yearSums[i];
+			}
+		}
+	}
+
+	// makes room for every year from fromYear to toYear, keeping the counts
+	private void growYears(int fromYear, int toYear) {
+		if (yearReadings.length > 0) {
+			fromYear = Math.min(fromYear, firstYear);
+			toYear = Math.max(toYear, firstYear + yearReadings.length - 1);
+		}
+		long[] readings = new long[toYear - fromYear + 1];
+		long[] sums = new long[readings.length];
+		if (yearReadings.length > 0) {
+			System.arraycopy(yearReadings, 0, readings, firstYear - fromYear,
+					yearReadings.length);
+			System.arraycopy(yearSums, 0, sums, firstYear - fromYear,
+					yearSums.length);
+		}
+		yearReadings = readings;
+		yearSums = sums;
+		firstYear = fromYear;
+	}
+
+	public long getNumReadings() {
+		return numReadings;
+	}
+
+	public long getSiteReadings(int siteCode) {
+		return siteCode < siteReadings.length ? siteReadings[siteCode] : 0;
+	}
+
+	// the average index value of a site's readings
+	public double getSiteMean(int siteCode) {
+		long readings = getSiteReadings(siteCode);
+		return readings == 0 ? 0 : siteSums[siteCode] / (double) readings;
+	}
+
+	public long getParameterReadings(int parameterCode) {
+		return parameterCode < parameterReadings.length
+				? parameterReadings[parameterCode] : 0;
+	}
+
+	// the years with readings run from getFirstYear to getLastYear, though
+	// some in between may have none
+	public int getFirstYear() {
+		return firstYear;
+	}
+
+	public int getLastYear() {
+		return firstYear + yearReadings.length - 1;
+	}
+
+	public long getYearReadings(int year) {
+		return year < firstYear || year > getLastYear() ? 0
+				: yearReadings[year - firstYear];
+	}
+
+	// the average index value of a year's readings
+	public double getYearMean(int year) {
+		long readings = getYearReadings(year);
+		return readings == 0 ? 0 : yearSums[year - firstYear]
+				/ (double) readings;
+	}
+}
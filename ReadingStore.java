@@ -0,0 +1,281 @@
+// ReadingStore		Author: Garrett Reihner
+//
+// A columnar store for all of the readings in a data file. Instead of one
+// ReadingGDR object per row, each field lives in its own primitive array and
+// the repeated text fields (site, parameter and description) are stored as
+// small codes from a StringDictionary of unique names. The long health
+// advisory and health effects texts are kept as UTF-8 bytes in a TextPool
+// and each reading only holds their codes, so no String is made for them
+// until a reading's text is asked for. Row i of the data file is found at
+// index i of every column.
+
+import java.util.Arrays;
+
+public class ReadingStore {
+	private int size = 0;	// number of readings in the store
+
+	// one entry per reading in each of these columns
+	private int[] ids = new int[1024];			// _id of the entry
+	private int[] days = new int[1024];			// date as days since 1/1/1970
+	private short[] years = new short[1024];		// year of the entry
+	private short[] indexValues = new short[1024];	// air quality index
+	private short[] siteCodes = new short[1024];	// index into sites
+	private short[] parameterCodes = new short[1024];	// index into parameters
+	private byte[] descriptionCodes = new byte[1024];	// index into descriptions
+	private int[] advisoryCodes = new int[1024];	// index into texts
+	private int[] effectsCodes = new int[1024];		// index into texts
+
+	// dictionaries of the unique names that the codes above refer to
+	private StringDictionary sites = new StringDictionary();
+	private StringDictionary parameters = new StringDictionary();
+	private StringDictionary descriptions = new StringDictionary();
+
+	// the unique health advisory and health effects texts
+	private TextPool texts = new TextPool();
+
+	// creates an empty store that readings are added to one at a time
+	public ReadingStore() {
+	}
+
+	// creates a store from columns that have already been filled in, such as
+	// ones read back from a snapshot. the arrays are used as they are
+	public ReadingStore(int size, int[] ids, int[] days, short[] years,
+			short[] indexValues, short[] siteCodes, short[] parameterCodes,
+			byte[] descriptionCodes, int[] advisoryCodes, int[] effectsCodes,
+			TextPool texts) {
+		this.size = size;
+		this.ids = ids;
+		this.days = days;
+		this.years = years;
+		this.indexValues = indexValues;
+		this.siteCodes = siteCodes;
+		this.parameterCodes = parameterCodes;
+		this.descriptionCodes = descriptionCodes;
+		this.advisoryCodes = advisoryCodes;
+		this.effectsCodes = effectsCodes;
+		this.texts = texts;
+	}
+
+	// adds one reading to the end of every column, growing them if needed.
+	// advisoryCode and effectsCode are codes from getTexts
+	public void add(int id, int day, int year, int siteCode, int parameterCode,
+			int indexValue, int descriptionCode, int advisoryCode,
+			int effectsCode) {
+		if (size == ids.length) {
+			grow(size * 2);
+		}
+		checkCodes(siteCode, parameterCode, descriptionCode);
+		checkIndexValue(indexValue);
+		ids[size] = id;
+		days[size] = day;
+		years[size] = (short) year;
+		indexValues[size] = (short) indexValue;
+		siteCodes[size] = (short) siteCode;
+		parameterCodes[size] = (short) parameterCode;
+		descriptionCodes[size] = (byte) descriptionCode;
+		advisoryCodes[size] = advisoryCode;
+		effectsCodes[size] = effectsCode;
+		size++;
+	}
+
+	// adds every reading of another store to the end of this one, with its
+	// site, parameter and description codes translated through the given
+	// arrays (other code -> code in this store). its texts are added to
+	// this store's pool
+	public void addAll(ReadingStore other, int[] siteMap, int[] parameterMap,
+			int[] descriptionMap) {
+		if (size + other.size > ids.length) {
+			grow(Math.max(size + other.size, ids.length * 2));
+		}
+		for (int code : siteMap) {
+			checkCodes(code, 0, 0);
+		}
+		for (int code : parameterMap) {
+			checkCodes(0, code, 0);
+		}
+		for (int code : descriptionMap) {
+			checkCodes(0, 0, code);
+		}
+
+		System.arraycopy(other.ids, 0, ids, size, other.size);
+		System.arraycopy(other.days, 0, days, size, other.size);
+		System.arraycopy(other.years, 0, years, size, other.size);
+		System.arraycopy(other.indexValues, 0, indexValues, size, other.size);
+		int[] textMap = texts.addAll(other.texts);
+		for (int i = 0; i < other.size; i++) {
+			advisoryCodes[size + i] = textMap[other.advisoryCodes[i]];
+			effectsCodes[size + i] = textMap[other.effectsCodes[i]];
+			siteCodes[size + i] = (short) siteMap[other.siteCodes[i]];
+			parameterCodes[size + i] =
+					(short) parameterMap[other.parameterCodes[i]];
+			descriptionCodes[size + i] =
+					(byte) descriptionMap[other.descriptionCodes[i]];
+		}
+		size += other.size;
+	}
+
+	// the code columns are narrower than an int, so make sure the codes
+	// still fit rather than letting them wrap around
+	private static void checkCodes(int siteCode, int parameterCode,
+			int descriptionCode) {
+		if (siteCode > Short.MAX_VALUE || parameterCode > Short.MAX_VALUE
+				|| descriptionCode > Byte.MAX_VALUE) {
+			throw new IllegalStateException("too many unique sites, "
+					+ "parameters or descriptions for the store");
+		}
+	}
+
+	// the index values are kept as shorts too, so one that does not fit is
+	// bad data and is reported instead of being stored as a wrong value
+	private static void checkIndexValue(int indexValue) {
+		if (indexValue > Short.MAX_VALUE || indexValue < Short.MIN_VALUE) {
+			throw new IllegalArgumentException("index value out of range "
+					+ "for the store: " + indexValue);
+		}
+	}
+
+	// resizes every column to the given capacity
+	private void grow(int capacity) {
+		ids = Arrays.copyOf(ids, capacity);
+		days = Arrays.copyOf(days, capacity);
+		years = Arrays.copyOf(years, capacity);
+		indexValues = Arrays.copyOf(indexValues, capacity);
+		siteCodes = Arrays.copyOf(siteCodes, capacity);
+		parameterCodes = Arrays.copyOf(parameterCodes, capacity);
+		descriptionCodes = Arrays.copyOf(descriptionCodes, capacity);
+		advisoryCodes = Arrays.copyOf(advisoryCodes, capacity);
+		effectsCodes = Arrays.copyOf(effectsCodes, capacity);
+	}
+
+	// drops the spare capacity left over from doubling once loading is done
+	public void trim() {
+		if (ids.length != size) {
+			grow(size);
+		}
+	}
+
+	// a store of the readings as they are now that later adds to this one
+	// do not change. the columns are shared rather than copied, which is
+	// safe since a row is never written again once it has been added (a
+	// column that grows is copied to a new array), so this takes time in
+	// proportion to the number of unique names and texts, not readings
+	public ReadingStore view() {
+		ReadingStore view = new ReadingStore(size, ids, days, years,
+				indexValues, siteCodes, parameterCodes, descriptionCodes,
+				advisoryCodes, effectsCodes, texts.copy());
+		view.setDictionaries(sites.copy(), parameters.copy(),
+				descriptions.copy());
+		return view;
+	}
+
+	// sets the dictionaries that the site, parameter and description codes
+	// refer to
+	public void setDictionaries(StringDictionary siteNames,
+			StringDictionary parameterNames,
+			StringDictionary descriptionNames) {
+		sites = siteNames;
+		parameters = parameterNames;
+		descriptions = descriptionNames;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getId(int row) {
+		return ids[row];
+	}
+
+	public int getDay(int row) {
+		return days[row];
+	}
+
+	public int getYear(int row) {
+		return years[row];
+	}
+
+	public int getIndexValue(int row) {
+		return indexValues[row];
+	}
+
+	public int getSiteCode(int row) {
+		return siteCodes[row];
+	}
+
+	public int getParameterCode(int row) {
+		return parameterCodes[row];
+	}
+
+	public int getDescriptionCode(int row) {
+		return descriptionCodes[row];
+	}
+
+	public int getAdvisoryCode(int row) {
+		return advisoryCodes[row];
+	}
+
+	public int getEffectsCode(int row) {
+		return effectsCodes[row];
+	}
+
+	// the following make a new String of the text each time they are called
+	public String getHealthAdvisory(int row) {
+		return texts.text(advisoryCodes[row]);
+	}
+
+	public String getHealthEffects(int row) {
+		return texts.text(effectsCodes[row]);
+	}
+
+	// builds a ReadingGDR for a single row when an object is really needed
+	public ReadingGDR getReading(int row) {
+		return new ReadingGDR(ids[row], years[row], days[row],
+				sites.name(siteCodes[row]),
+				parameters.name(parameterCodes[row]), indexValues[row],
+				descriptions.name(descriptionCodes[row]),
+				texts.text(advisoryCodes[row]), texts.text(effectsCodes[row]));
+	}
+
+	public StringDictionary getSites() {
+		return sites;
+	}
+
+	public StringDictionary getParameters() {
+		return parameters;
+	}
+
+	public StringDictionary getDescriptions() {
+		return descriptions;
+	}
+
+	// the pool that the advisory and effects codes refer to. the loader adds
+	// each reading's texts to it before adding the reading
+	public TextPool getTexts() {
+		return texts;
+	}
+
+	// the following return the code of a name, or -1 if it never appeared
+	public int siteCode(String site) {
+		return sites.code(site);
+	}
+
+	public int parameterCode(String parameter) {
+		return parameters.code(parameter);
+	}
+
+	public int descriptionCode(String description) {
+		return descriptions.code(description);
+	}
+
+	// converts a year, month and day into the number of days since 1/1/1970
+	// without creating any date objects (same result as LocalDate.toEpochDay)
+	public static int epochDay(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = Math.floorDiv(y, 400);
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+				+ dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+}
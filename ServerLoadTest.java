@@ -0,0 +1,264 @@
+// ServerLoadTest		Author: Garrett Reihner
+//
+// Measures how quickly a DashboardServer answers /counts with thousands of
+// requests in flight at once. It reads /meta for the sites, descriptions
+// and years, then sends random filters through the JDK's HttpClient,
+// keeping a fixed number of requests waiting for an answer the whole time
+// (a new one goes out as soon as one comes back). Most of them repeat a
+// small set of hot filters, the way a few popular views would, and the
+// rest are any mix of description, site and year. A warm up round is sent
+// and thrown away first so the JIT and the server's cache are warm, then
+// the time of each answer is kept in a LatencyHistogram and the p50, p90,
+// p99 and p99.9 are printed with the throughput.
+//
+// usage: java ServerLoadTest [--url=http://host:port] [--requests=N]
+//            [--concurrency=N] [--warmup=N] [--hot=F] [--seed=N] [filename]
+// with no --url a server for the file is started in this JVM on a free port
+
+import java.io.*;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ServerLoadTest {
+	// number of different filters that most requests repeat
+	private static final int HOT_QUERIES = 64;
+
+	private String url = null;
+	private String filename = "airQualitySynthetic.txt";
+	private int requests = 200000;
+	private int concurrency = 2000;
+	private int warmup = 20000;
+	private double hot = 0.9;	// fraction of requests for a hot filter
+	private long seed = 1;
+
+	private final AtomicLong failures = new AtomicLong();
+
+	public static void main(String[] args) {
+		ServerLoadTest test = new ServerLoadTest();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].startsWith("--")) {
+					test.setOption(args[i]);
+				} else {
+					test.filename = args[i];
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println("usage: java ServerLoadTest "
+					+ "[--url=http://host:port] [--requests=N] "
+					+ "[--concurrency=N] [--warmup=N] [--hot=F] [--seed=N] "
+					+ "[filename]");
+			return;
+		}
+
+		DashboardServer server = null;
+		try {
+			if (test.url == null) {
+				DatasetSnapshot snapshot = DatasetSnapshot.load(test.filename,
+						Runtime.getRuntime().availableProcessors());
+				server = new DashboardServer(snapshot);
+				server.start(0);
+				test.url = "http://localhost:" + server.getPort();
+				System.out.println("Started a server for " + test.filename
+						+ " (" + snapshot.getNumReadings() + " readings) at "
+						+ test.url + (server.isVirtual()
+						? " on virtual threads" : " on a thread pool"));
+			}
+			test.run();
+		} catch (IOException | InterruptedException e) {
+			System.out.println(e);
+		} finally {
+			if (server != null) {
+				server.stop();
+				System.out.println("Server: " + server);
+			}
+		}
+	}
+
+	// reads one --name=value option
+	private void setOption(String option) {
+		int equals = option.indexOf('=');
+		if (equals == -1) {
+			throw new IllegalArgumentException("missing value: " + option);
+		}
+		String name = option.substring(2, equals);
+		String value = option.substring(equals + 1);
+		try {
+			if (name.equals("url")) {
+				url = value.endsWith("/")
+						? value.substring(0, value.length() - 1) : value;
+			} else if (name.equals("requests")) {
+				requests = Integer.parseInt(value);
+			} else if (name.equals("concurrency")) {
+				concurrency = Integer.parseInt(value);
+			} else if (name.equals("warmup")) {
+				warmup = Integer.parseInt(value);
+			} else if (name.equals("hot")) {
+				hot = Double.parseDouble(value);
+			} else if (name.equals("seed")) {
+				seed = Long.parseLong(value);
+			} else {
+				throw new IllegalArgumentException("unknown option: "
+						+ option);
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("bad value: " + option);
+		}
+	}
+
+	private void run() throws IOException, InterruptedException {
+		HttpClient client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofSeconds(10)).build();
+		String meta = client.send(HttpRequest.newBuilder(
+				URI.create(url + "/meta")).build(),
+				HttpResponse.BodyHandlers.ofString()).body();
+		String[] sites = strings(meta, "sites");
+		String[] descriptions = strings(meta, "descriptions");
+		int minYear = number(meta, "minYear");
+		int maxYear = number(meta, "maxYear");
+
+		// the requests to send, with the hot filters repeated
+		Random random = new Random(seed);
+		HttpRequest[] hotRequests = new HttpRequest[HOT_QUERIES];
+		for (int i = 0; i < HOT_QUERIES; i++) {
+			hotRequests[i] = request(random, sites, descriptions, minYear,
+					maxYear);
+		}
+		HttpRequest[] mix = new HttpRequest[warmup + requests];
+		for (int i = 0; i < mix.length; i++) {
+			mix[i] = random.nextDouble() < hot
+					? hotRequests[random.nextInt(HOT_QUERIES)]
+					: request(random, sites, descriptions, minYear, maxYear);
+		}
+
+		send(client, mix, 0, warmup, null);
+		failures.set(0);
+		LatencyHistogram latencies = new LatencyHistogram();
+		long start = System.nanoTime();
+		send(client, mix, warmup, mix.length, latencies);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println(requests + " requests, " + concurrency
+				+ " at a time, " + Math.round(hot * 100) + "% hot, in "
+				+ Math.round(seconds * 100) / 100.0 + " s ("
+				+ Math.round(requests / seconds) + " requests/s)");
+		System.out.println("Latency p50 " + millis(latencies.getPercentile(0.5))
+				+ ", p90 " + millis(latencies.getPercentile(0.9))
+				+ ", p99 " + millis(latencies.getPercentile(0.99))
+				+ ", p99.9 " + millis(latencies.getPercentile(0.999))
+				+ ", max " + millis(latencies.getMax()));
+		System.out.println("Failed: " + failures.get());
+	}
+
+	// a /counts request for a random filter, with each of description, site
+	// and year sometimes left off
+	private HttpRequest request(Random random, String[] sites,
+			String[] descriptions, int minYear, int maxYear) {
+		StringBuilder query = new StringBuilder(url).append("/counts?");
+		int description = random.nextInt(descriptions.length + 1);
+		if (description < descriptions.length) {
+			query.append("description=").append(URLEncoder.encode(
+					descriptions[description], StandardCharsets.UTF_8))
+					.append('&');
+		}
+		int site = random.nextInt(sites.length + 1);
+		if (site < sites.length) {
+			query.append("site=").append(URLEncoder.encode(sites[site],
+					StandardCharsets.UTF_8)).append('&');
+		}
+		int year = minYear + random.nextInt(maxYear - minYear + 2);
+		if (year <= maxYear) {
+			query.append("year=").append(year);
+		}
+		return HttpRequest.newBuilder(URI.create(query.toString()))
+				.timeout(Duration.ofSeconds(60)).build();
+	}
+
+	// sends mix[from] to mix[to - 1] with at most concurrency waiting at
+	// once, and records the time of each answer if latencies is not null
+	private void send(HttpClient client, HttpRequest[] mix, int from, int to,
+			LatencyHistogram latencies) throws InterruptedException {
+		Semaphore inFlight = new Semaphore(concurrency);
+		CountDownLatch done = new CountDownLatch(to - from);
+		for (int i = from; i < to; i++) {
+			inFlight.acquire();
+			long sent = System.nanoTime();
+			client.sendAsync(mix[i], HttpResponse.BodyHandlers.ofByteArray())
+					.whenComplete((response, error) -> {
+				long time = System.nanoTime() - sent;
+				if (error != null || response.statusCode() != 200) {
+					failures.incrementAndGet();
+				} else if (latencies != null) {
+					latencies.record(time);
+				}
+				inFlight.release();
+				done.countDown();
+			});
+		}
+		done.await();
+	}
+
+	private static String millis(long nanos) {
+		return Math.round(nanos / 1e4) / 100.0 + " ms";
+	}
+
+	// the strings of a JSON array of strings, such as "sites":[...]
+	private static String[] strings(String json, String key) {
+		ArrayList<String> strings = new ArrayList<String>();
+		int i = json.indexOf("\"" + key + "\":[");
+		if (i == -1) {
+			throw new IllegalArgumentException("no " + key + " in /meta");
+		}
+		i += key.length() + 4;
+		StringBuilder string = new StringBuilder();
+		while (json.charAt(i) != ']') {
+			if (json.charAt(i) == ',') {
+				i++;
+			}
+			i++;		// the opening quote
+			string.setLength(0);
+			while (json.charAt(i) != '"') {
+				char c = json.charAt(i++);
+				if (c == '\\') {
+					c = json.charAt(i++);
+					if (c == 'u') {
+						c = (char) Integer.parseInt(
+								json.substring(i, i + 4), 16);
+						i += 4;
+					}
+				}
+				string.append(c);
+			}
+			i++;		// the closing quote
+			strings.add(string.toString());
+		}
+		return strings.toArray(new String[0]);
+	}
+
+	// the whole number after "key": in the JSON
+	private static int number(String json, String key) {
+		int start = json.indexOf("\"" + key + "\":");
+		if (start == -1) {
+			throw new IllegalArgumentException("no " + key + " in /meta");
+		}
+		start += key.length() + 3;
+		int end = start;
+		while (end < json.length() && (json.charAt(end) == '-'
+				|| Character.isDigit(json.charAt(end)))) {
+			end++;
+		}
+		return Integer.parseInt(json.substring(start, end));
+	}
+}
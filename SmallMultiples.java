@@ -0,0 +1,217 @@
+// SmallMultiples		Author: Garrett Reihner
+//
+// Draws a grid of small bar charts on a single Canvas, one panel for each
+// site with a bar for every parameter. Drawing straight onto a Canvas keeps
+// the scene graph at one node no matter how many sites and bars there are,
+// where the main chart needs a Rectangle and a Label for every bar. Every
+// panel remembers the counts it last drew, so when the filters change only
+// the panels whose counts actually changed are drawn again. Changes are
+// drawn once per frame by an AnimationTimer, so several quick changes to
+// the controls only cost one redraw, and the timer stops itself as soon as
+// there is nothing left to draw.
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import java.util.Arrays;
+
+public class SmallMultiples {
+	private static final double GAP = 6;		// space between panels
+	private static final double TITLE = 14;		// height of a panel's title
+	private static final double BAR_GAP = 1;	// space between bars
+
+	private final Canvas canvas;
+	private final GraphicsContext graphics;
+
+	private String[] siteNames = new String[0];	// title of each panel
+	private int numParameters;	// bars in each panel
+	private int scale = 1;		// count that fills a panel's height
+
+	// size and arrangement of the panels, worked out in layout
+	private int columns;
+	private double panelWidth;
+	private double panelHeight;
+
+	private int[][] drawn;		// counts each panel is showing, or null
+	private int[][] pending;	// counts each panel should show next
+	private boolean[] dirty;	// panels that have to be drawn again
+	private boolean anyDirty;	// true if any panel is dirty
+	private boolean cleared;	// the whole canvas has to be cleared first
+
+	// draws the dirty panels at most once per frame, then stops
+	private final AnimationTimer frames = new AnimationTimer() {
+		public void handle(long now) {
+			drawDirty();
+			stop();
+		}
+	};
+
+	public SmallMultiples(double width, double height) {
+		canvas = new Canvas(width, height);
+		graphics = canvas.getGraphicsContext2D();
+		layout();
+	}
+
+	// the node to add to the scene
+	public Canvas getCanvas() {
+		return canvas;
+	}
+
+	// changes the size of the grid, which draws every panel again
+	public void setSize(double width, double height) {
+		canvas.setWidth(width);
+		canvas.setHeight(height);
+		layout();
+	}
+
+	// sets the sites (one panel each) and the number of parameters (one bar
+	// each in every panel). scale is the count that reaches the top of a
+	// panel, which should stay the same while the filters change so that
+	// panels with the same counts do not have to be drawn again
+	public void setData(String[] sites, int parameters, int scale) {
+		siteNames = sites;
+		numParameters = parameters;
+		this.scale = Math.max(1, scale);
+		layout();
+	}
+
+	// sets the counts of each parameter that the panel of a site shows. the
+	// panel is only drawn again if they are different from what it shows
+	// now. the array is kept, so it must not be changed afterwards
+	public void setCounts(int site, int[] counts) {
+		pending[site] = counts;
+		if (!Arrays.equals(counts, drawn[site])) {
+			markDirty(site);
+		} else if (dirty[site]) {
+			// changed back before it was drawn
+			dirty[site] = false;
+		}
+	}
+
+	// the site and parameter of the bar at a point on the canvas, or null
+	// if the point is not on a bar. like the main chart this is worked out
+	// with arithmetic rather than checking every bar
+	public int[] barAt(double x, double y) {
+		if (columns == 0 || numParameters == 0 || x < 0 || y < 0) {
+			return null;
+		}
+		int column = (int) (x / (panelWidth + GAP));
+		int row = (int) (y / (panelHeight + GAP));
+		int site = row * columns + column;
+		if (column >= columns || site >= siteNames.length
+				|| drawn[site] == null) {
+			return null;
+		}
+		double left = column * (panelWidth + GAP);
+		double bottom = row * (panelHeight + GAP) + panelHeight;
+		double barWidth = panelWidth / numParameters;
+		int parameter = (int) ((x - left) / barWidth);
+		if (parameter >= numParameters
+				|| y < bottom - barHeight(drawn[site][parameter])
+				|| y > bottom) {
+			return null;
+		}
+		return new int[] {site, parameter};
+	}
+
+	// the counts the panel of a site is showing, or null if it has not been
+	// drawn yet
+	public int[] getCounts(int site) {
+		return drawn[site];
+	}
+
+	// works out the panel sizes so the grid fills the canvas with panels
+	// about as wide as they are tall, and marks every panel dirty
+	private void layout() {
+		int panels = siteNames.length;
+		double width = canvas.getWidth();
+		double height = canvas.getHeight();
+		if (panels == 0) {
+			columns = 0;
+		} else {
+			columns = (int) Math.ceil(Math.sqrt(panels * width
+					/ Math.max(1, height)));
+			columns = Math.max(1, Math.min(columns, panels));
+			int rows = (panels + columns - 1) / columns;
+			panelWidth = (width - GAP * (columns - 1)) / columns;
+			panelHeight = (height - GAP * (rows - 1)) / rows;
+		}
+
+		// keep any counts that were set so they are drawn at the new size
+		int[][] oldPending = pending;
+		drawn = new int[panels][];
+		pending = new int[panels][];
+		dirty = new boolean[panels];
+		for (int i = 0; i < panels; i++) {
+			if (oldPending != null && i < oldPending.length
+					&& oldPending[i] != null
+					&& oldPending[i].length == numParameters) {
+				pending[i] = oldPending[i];
+			}
+			dirty[i] = true;
+		}
+		cleared = true;
+		anyDirty = true;
+		frames.start();
+	}
+
+	private void markDirty(int site) {
+		dirty[site] = true;
+		if (!anyDirty) {
+			anyDirty = true;
+			frames.start();
+		}
+	}
+
+	// draws every dirty panel in one pass
+	private void drawDirty() {
+		if (!anyDirty) {
+			return;
+		}
+		if (cleared) {
+			graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+			cleared = false;
+		}
+		graphics.setFont(Font.font(10));
+		graphics.setTextBaseline(VPos.TOP);
+		for (int site = 0; site < dirty.length; site++) {
+			if (dirty[site]) {
+				drawPanel(site);
+				drawn[site] = pending[site];
+				dirty[site] = false;
+			}
+		}
+		anyDirty = false;
+	}
+
+	private void drawPanel(int site) {
+		double left = (site % columns) * (panelWidth + GAP);
+		double top = (site / columns) * (panelHeight + GAP);
+		graphics.clearRect(left, top, panelWidth, panelHeight);
+		graphics.setStroke(Color.LIGHTGRAY);
+		graphics.strokeRect(left, top, panelWidth, panelHeight);
+		graphics.setFill(Color.DARKGRAY);
+		graphics.fillText(siteNames[site], left + 2, top + 1);
+
+		int[] counts = pending[site];
+		if (counts == null) {
+			return;
+		}
+		double bottom = top + panelHeight;
+		double barWidth = panelWidth / numParameters;
+		graphics.setFill(Color.BLACK);
+		for (int i = 0; i < numParameters; i++) {
+			double height = barHeight(counts[i]);
+			graphics.fillRect(left + barWidth * i, bottom - height,
+					Math.max(1, barWidth - BAR_GAP), height);
+		}
+	}
+
+	// height of a bar for a count, leaving room for the panel's title
+	private double barHeight(int count) {
+		return count / (double) scale * Math.max(0, panelHeight - TITLE);
+	}
+}
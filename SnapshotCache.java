@@ -0,0 +1,427 @@
+// SnapshotCache		Author: Garrett Reihner
+//
+// Saves a parsed data file to a binary sidecar file next to it (the data
+// file name plus ".snapshot") so later launches can skip parsing the text.
+// The sidecar records the size, modification time and CRC32C of the data
+// file it was made from along with a format version, and is only used when
+// all of those still match. Otherwise it is ignored and rebuilt. Reading a
+// snapshot copies each column out in bulk through a small reused buffer.
+// Nothing is memory-mapped: on Windows a mapped file cannot be replaced
+// until the mapping is garbage collected, which would stop an out of date
+// sidecar from ever being rewritten. Only the source file is covered by the
+// CRC, so every count and length in the sidecar is checked against what is
+// left of it before anything is allocated, and the codes are checked
+// against the dictionaries, so that a damaged sidecar is treated the same
+// as a missing one.
+//
+// Layout (big endian, as written by DataOutputStream):
+//   magic, version, source size, source mtime, source crc,
+//   number of readings, min year, max year,
+//   site, parameter and description dictionaries (name + count each),
+//   pool of unique health advisory/effects texts in code order,
+//   columns: ids, days, years, index values, site codes, parameter codes,
+//   description codes, advisory codes, effects codes
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+public class SnapshotCache {
+	private static final int MAGIC = 0x41515343;	// "AQSC"
+	// bump this whenever the layout above changes so old sidecars are rebuilt
+	private static final int VERSION = 2;
+	// bytes in the header, up to and including the year bounds
+	private static final int HEADER_SIZE = 44;
+	// bytes of each reading in the columns
+	private static final int READING_SIZE = 25;
+	// size of the buffer that files are read through
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final Path source;	// the data file
+	private final Path sidecar;	// where its snapshot lives
+
+	// year bounds and size in bytes of the last snapshot read or written,
+	// and the size of the data file it was made from
+	private int minYear;
+	private int maxYear;
+	private long snapshotSize;
+	private long sourceSize;
+
+	public SnapshotCache(String filename) {
+		source = Paths.get(filename);
+		sidecar = Paths.get(filename + ".snapshot");
+	}
+
+	// reads the snapshot if there is one made from the current data file,
+	// or returns null when it is missing, out of date, a different version
+	// or damaged
+	public ReadingStore read() throws IOException {
+		if (!Files.exists(sidecar)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(sidecar,
+				StandardOpenOption.READ)) {
+			Input in = new Input(channel);
+			if (in.remaining() < HEADER_SIZE
+					|| in.getInt() != MAGIC
+					|| in.getInt() != VERSION) {
+				return null;
+			}
+			// cheap checks first so a changed file is usually spotted
+			// without hashing it
+			long size = in.getLong();
+			long modified = in.getLong();
+			long crc = in.getLong();
+			if (size != Files.size(source)
+					|| modified != Files.getLastModifiedTime(source).toMillis()
+					|| crc != hash(source, size)) {
+				return null;
+			}
+
+			int numReadings = in.getInt();
+			minYear = in.getInt();
+			maxYear = in.getInt();
+			if (numReadings < 0
+					|| (long) numReadings * READING_SIZE > in.remaining()) {
+				return null;
+			}
+			StringDictionary sites = readDictionary(in);
+			StringDictionary parameters = readDictionary(in);
+			StringDictionary descriptions = readDictionary(in);
+			// the texts were written in code order and are all different,
+			// so adding them back gives each one the same code
+			TextPool texts = new TextPool();
+			int numTexts = in.getInt();
+			if (numTexts < 1 || (long) numTexts * 4 > in.remaining()) {
+				return null;
+			}
+			for (int i = 0; i < numTexts; i++) {
+				byte[] bytes = new byte[in.getLength()];
+				in.get(bytes);
+				texts.add(bytes, 0, bytes.length);
+			}
+			if (texts.size() != numTexts
+					|| (long) numReadings * READING_SIZE != in.remaining()) {
+				return null;
+			}
+
+			int[] ids = new int[numReadings];
+			int[] days = new int[numReadings];
+			short[] years = new short[numReadings];
+			short[] indexValues = new short[numReadings];
+			short[] siteCodes = new short[numReadings];
+			short[] parameterCodes = new short[numReadings];
+			byte[] descriptionCodes = new byte[numReadings];
+			int[] advisoryCodes = new int[numReadings];
+			int[] effectsCodes = new int[numReadings];
+			in.get(ids);
+			in.get(days);
+			in.get(years);
+			in.get(indexValues);
+			in.get(siteCodes);
+			in.get(parameterCodes);
+			in.get(descriptionCodes);
+			in.get(advisoryCodes);
+			in.get(effectsCodes);
+			if (!inRange(siteCodes, sites.size())
+					|| !inRange(parameterCodes, parameters.size())
+					|| !inRange(descriptionCodes, descriptions.size())
+					|| !inRange(advisoryCodes, numTexts)
+					|| !inRange(effectsCodes, numTexts)) {
+				return null;
+			}
+
+			ReadingStore store = new ReadingStore(numReadings, ids, days,
+					years, indexValues, siteCodes, parameterCodes,
+					descriptionCodes, advisoryCodes, effectsCodes, texts);
+			store.setDictionaries(sites, parameters, descriptions);
+			snapshotSize = channel.size();
+			sourceSize = size;
+			return store;
+		} catch (EOFException | RuntimeException e) {
+			// a truncated or damaged sidecar is treated the same as a
+			// missing one, and rebuilt from the text
+			return null;
+		}
+	}
+
+	// writes a snapshot of the store, which holds the readings of the first
+	// size bytes of the data file as it was when last modified at the given
+	// time (both taken before the file was parsed). it is written to a
+	// temporary file first and moved into place, so a reader never sees a
+	// half written snapshot. if the data file has changed since then, even
+	// while the snapshot was being written, it is not kept
+	public void write(ReadingStore store, int minYear, int maxYear,
+			long size, long modified) throws IOException {
+		this.minYear = minYear;
+		this.maxYear = maxYear;
+		sourceSize = size;
+		int numReadings = store.size();
+		if (changed(size, modified)) {
+			return;
+		}
+
+		Path temp = Paths.get(sidecar + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temp),
+				1 << 20))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(size);
+			out.writeLong(modified);
+			out.writeLong(hash(source, size));
+			out.writeInt(numReadings);
+			out.writeInt(minYear);
+			out.writeInt(maxYear);
+			writeDictionary(out, store.getSites());
+			writeDictionary(out, store.getParameters());
+			writeDictionary(out, store.getDescriptions());
+			TextPool texts = store.getTexts();
+			out.writeInt(texts.size());
+			for (int i = 0; i < texts.size(); i++) {
+				byte[] bytes = texts.textBytes(i);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+			for (int i = 0; i < numReadings; i++) {
+				out.writeInt(store.getId(i));
+			}
+			for (int i = 0; i < numReadings; i++) {
+				out.writeInt(store.getDay(i));
+			}
+			for (int i = 0; i < numReadings; i++) {
+				out.writeShort(store.getYear(i));
+			}
+			for (int i = 0; i < numReadings; i++) {
+				out.writeShort(store.getIndexValue(i));
+			}
+			for (int i = 0; i < numReadings; i++) {
+				out.writeShort(store.getSiteCode(i));
+			}
+			for (int i = 0; i < numReadings; i++) {
+				out.writeShort(store.getParameterCode(i));
+			}
+			for (int i = 0; i < numReadings; i++) {
+				out.writeByte(store.getDescriptionCode(i));
+			}
+			for (int i = 0; i < numReadings; i++) {
+				out.writeInt(store.getAdvisoryCode(i));
+			}
+			for (int i = 0; i < numReadings; i++) {
+				out.writeInt(store.getEffectsCode(i));
+			}
+		}
+		Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		snapshotSize = Files.size(sidecar);
+		if (changed(size, modified)) {
+			Files.deleteIfExists(sidecar);
+		}
+	}
+
+	// true if the data file is no longer the given size or has been
+	// modified since the given time
+	private boolean changed(long size, long modified) throws IOException {
+		return Files.size(source) != size
+				|| Files.getLastModifiedTime(source).toMillis() != modified;
+	}
+
+	public int getMinYear() {
+		return minYear;
+	}
+
+	public int getMaxYear() {
+		return maxYear;
+	}
+
+	public long getSnapshotSize() {
+		return snapshotSize;
+	}
+
+	// size of the data file the last snapshot read or written was made
+	// from, which is where its readings end
+	public long getSourceSize() {
+		return sourceSize;
+	}
+
+	// CRC32C of the first length bytes of the data file, read through one
+	// reused buffer
+	private static long hash(Path file, long length) throws IOException {
+		CRC32C crc = new CRC32C();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			for (long position = 0; position < length; ) {
+				buffer.limit((int) Math.min(BUFFER_SIZE, length - position));
+				int read = channel.read(buffer, position);
+				if (read == -1) {
+					break;
+				}
+				position += read;
+				buffer.flip();
+				crc.update(buffer);
+				buffer.clear();
+			}
+		}
+		return crc.getValue();
+	}
+
+	// names are written in code order so they get the same codes back
+	private static void writeDictionary(DataOutputStream out,
+			StringDictionary dictionary) throws IOException {
+		out.writeInt(dictionary.size());
+		for (int i = 0; i < dictionary.size(); i++) {
+			writeString(out, dictionary.name(i));
+			out.writeInt(dictionary.count(i));
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String text)
+			throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static StringDictionary readDictionary(Input in)
+			throws IOException {
+		StringDictionary dictionary = new StringDictionary();
+		int size = in.getInt();
+		// every name takes at least its length and count
+		if (size < 0 || (long) size * 8 > in.remaining()) {
+			throw new IllegalArgumentException("bad dictionary size");
+		}
+		for (int i = 0; i < size; i++) {
+			byte[] bytes = new byte[in.getLength()];
+			in.get(bytes);
+			dictionary.add(new String(bytes, StandardCharsets.UTF_8),
+					in.getInt());
+		}
+		if (dictionary.size() != size) {
+			throw new IllegalArgumentException("repeated dictionary name");
+		}
+		return dictionary;
+	}
+
+	// true if every code of the column is from 0 up to but not including
+	// limit
+	private static boolean inRange(short[] codes, int limit) {
+		for (short code : codes) {
+			if (code < 0 || code >= limit) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean inRange(byte[] codes, int limit) {
+		for (byte code : codes) {
+			if (code < 0 || code >= limit) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean inRange(int[] codes, int limit) {
+		for (int code : codes) {
+			if (code < 0 || code >= limit) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// reads the sidecar in order through one buffer, in the same big endian
+	// layout DataOutputStream wrote it. running out of file throws
+	// EOFException
+	private static class Input {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private long remaining;	// bytes not yet taken from the file
+
+		Input(FileChannel channel) throws IOException {
+			this.channel = channel;
+			remaining = channel.size();
+			buffer.flip();
+		}
+
+		long remaining() {
+			return remaining;
+		}
+
+		int getInt() throws IOException {
+			fill(4);
+			remaining -= 4;
+			return buffer.getInt();
+		}
+
+		long getLong() throws IOException {
+			fill(8);
+			remaining -= 8;
+			return buffer.getLong();
+		}
+
+		// a length followed by that many bytes, checked against what is
+		// left of the file before anything is allocated for it
+		int getLength() throws IOException {
+			int length = getInt();
+			if (length < 0 || length > remaining) {
+				throw new IllegalArgumentException("bad length " + length);
+			}
+			return length;
+		}
+
+		void get(byte[] column) throws IOException {
+			for (int done = 0; done < column.length; ) {
+				int count = Math.min(fill(1), column.length - done);
+				buffer.get(column, done, count);
+				done += count;
+				remaining -= count;
+			}
+		}
+
+		void get(short[] column) throws IOException {
+			for (int done = 0; done < column.length; ) {
+				int count = Math.min(fill(2) / 2, column.length - done);
+				buffer.asShortBuffer().get(column, done, count);
+				buffer.position(buffer.position() + count * 2);
+				done += count;
+				remaining -= count * 2;
+			}
+		}
+
+		void get(int[] column) throws IOException {
+			for (int done = 0; done < column.length; ) {
+				int count = Math.min(fill(4) / 4, column.length - done);
+				buffer.asIntBuffer().get(column, done, count);
+				buffer.position(buffer.position() + count * 4);
+				done += count;
+				remaining -= count * 4;
+			}
+		}
+
+		// reads more of the file until the buffer holds at least the given
+		// number of bytes, and returns how many it holds
+		private int fill(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				buffer.compact();
+				while (buffer.position() < bytes) {
+					if (channel.read(buffer) == -1) {
+						throw new EOFException("snapshot is truncated");
+					}
+				}
+				buffer.flip();
+			}
+			return buffer.remaining();
+		}
+	}
+}
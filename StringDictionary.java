@@ -0,0 +1,157 @@
+// StringDictionary		Author: Garrett Reihner
+//
+// Gives each unique string (such as a site or parameter name) a small code,
+// handing out codes 0, 1, 2, ... in the order the strings are first seen so
+// that anything drawn from the codes keeps the order of the data file. Codes
+// are found through a hash table, so looking one up does not depend on how
+// many strings there are, and the table grows as needed so there is no cap
+// on the number of unique strings. The dictionary also counts how many times
+// each code has been added.
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class StringDictionary {
+	private String[] names = new String[16];	// name of each code
+	private byte[][] nameBytes = new byte[16][];	// UTF-8 bytes of each name
+	private int[] hashes = new int[16];		// hash of each name's bytes
+	private int[] counts = new int[16];		// times each code was added
+	private int size = 0;				// number of codes handed out
+
+	// open addressing hash table holding code + 1 in each used slot so that
+	// 0 can mark an empty slot. its length is always a power of two
+	private int[] table = new int[32];
+
+	// adds one occurrence of the name and returns its code, giving it the
+	// next code if it has not been seen before
+	public int add(String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		return add(bytes, 0, bytes.length);
+	}
+
+	// same as add(String) but reads the name straight from a range of bytes
+	// so that a String is only created the first time a name is seen
+	public int add(byte[] bytes, int start, int end) {
+		int hash = hash(bytes, start, end);
+		int code = find(bytes, start, end, hash);
+		if (code == -1) {
+			code = insert(bytes, start, end, hash);
+		}
+		counts[code]++;
+		return code;
+	}
+
+	// adds the given number of occurrences of the name at once and returns
+	// its code, for rebuilding a dictionary that was saved with its counts
+	public int add(String name, int occurrences) {
+		int code = add(name);
+		counts[code] += occurrences - 1;
+		return code;
+	}
+
+	// a dictionary with the same codes and counts that later adds to this
+	// one do not change
+	public StringDictionary copy() {
+		StringDictionary copy = new StringDictionary();
+		copy.names = Arrays.copyOf(names, names.length);
+		copy.nameBytes = Arrays.copyOf(nameBytes, nameBytes.length);
+		copy.hashes = Arrays.copyOf(hashes, hashes.length);
+		copy.counts = Arrays.copyOf(counts, counts.length);
+		copy.size = size;
+		copy.table = Arrays.copyOf(table, table.length);
+		return copy;
+	}
+
+	// counts one more occurrence of a code that has already been handed out
+	public void increment(int code) {
+		counts[code]++;
+	}
+
+	// returns the code of the name without counting it, or -1 if it has
+	// never been added
+	public int code(String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		return find(bytes, 0, bytes.length, hash(bytes, 0, bytes.length));
+	}
+
+	public String name(int code) {
+		return names[code];
+	}
+
+	public int count(int code) {
+		return counts[code];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// every name, indexed by code (so in first-seen order)
+	public String[] names() {
+		return Arrays.copyOf(names, size);
+	}
+
+	// the count of every code, in the same order as names()
+	public int[] counts() {
+		return Arrays.copyOf(counts, size);
+	}
+
+	// looks through the hash table for the name, returning its code or -1
+	private int find(byte[] bytes, int start, int end, int hash) {
+		int mask = table.length - 1;
+		for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int code = table[slot] - 1;
+			if (hashes[code] == hash && Arrays.equals(nameBytes[code], 0,
+					nameBytes[code].length, bytes, start, end)) {
+				return code;
+			}
+		}
+		return -1;
+	}
+
+	// gives the name the next code and records it in the hash table
+	private int insert(byte[] bytes, int start, int end, int hash) {
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			nameBytes = Arrays.copyOf(nameBytes, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+			counts = Arrays.copyOf(counts, size * 2);
+		}
+		int code = size;
+		nameBytes[code] = Arrays.copyOfRange(bytes, start, end);
+		names[code] = new String(nameBytes[code], StandardCharsets.UTF_8);
+		hashes[code] = hash;
+		size++;
+
+		// keep the table at most half full so lookups stay short
+		if (size * 2 > table.length) {
+			table = new int[table.length * 2];
+			for (int i = 0; i < size; i++) {
+				place(i);
+			}
+		} else {
+			place(code);
+		}
+		return code;
+	}
+
+	// puts a code in the first empty slot at or after its hash
+	private void place(int code) {
+		int mask = table.length - 1;
+		int slot = hashes[code] & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = code + 1;
+	}
+
+	// FNV-1a hash of the bytes, mixed so the low bits used by the table
+	// depend on the whole name
+	static int hash(byte[] bytes, int start, int end) {
+		int hash = 0x811c9dc5;
+		for (int i = start; i < end; i++) {
+			hash = (hash ^ (bytes[i] & 0xff)) * 0x01000193;
+		}
+		return hash ^ (hash >>> 16);
+	}
+}
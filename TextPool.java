@@ -0,0 +1,140 @@
+// TextPool		Author: Garrett Reihner
+//
+// Holds the long, repeated text fields (the health advisory and health
+// effects) without turning them into Strings. Each unique text is stored
+// once as UTF-8 bytes, one after another in a single byte array, and is
+// given a code; a reading only records the code, which stands for the
+// offset and length of its text in the pool. A String is only made when
+// the text of a reading is actually asked for. Code 0 is always the empty
+// text, which most readings have. Codes are found through the same kind of
+// hash table as StringDictionary.
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class TextPool {
+	// the code of the empty text
+	public static final int EMPTY = 0;
+
+	private byte[] bytes = new byte[1024];	// every text, one after another
+	private int numBytes = 0;				// bytes used so far
+	private int[] offsets = new int[16];	// where each code's text starts
+	private int[] lengths = new int[16];	// length in bytes of each text
+	private int[] hashes = new int[16];		// hash of each text's bytes
+	private int size = 1;					// codes handed out, including 0
+
+	// open addressing hash table holding code + 1 in each used slot so that
+	// 0 can mark an empty slot. its length is always a power of two
+	private int[] table = new int[32];
+
+	// returns the code of the text in the given range of bytes, adding it
+	// to the pool if it has not been seen before
+	public int add(byte[] text, int start, int end) {
+		if (start == end) {
+			return EMPTY;
+		}
+		int hash = StringDictionary.hash(text, start, end);
+		int mask = table.length - 1;
+		for (int slot = hash & mask; table[slot] != 0;
+				slot = (slot + 1) & mask) {
+			int code = table[slot] - 1;
+			if (hashes[code] == hash && Arrays.equals(bytes, offsets[code],
+					offsets[code] + lengths[code], text, start, end)) {
+				return code;
+			}
+		}
+		return insert(text, start, end, hash);
+	}
+
+	public int add(String text) {
+		byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+		return add(utf8, 0, utf8.length);
+	}
+
+	// adds every text of another pool to this one and returns the code in
+	// this pool of each of its codes, for merging stores
+	public int[] addAll(TextPool other) {
+		int[] codes = new int[other.size];
+		for (int code = 1; code < other.size; code++) {
+			codes[code] = add(other.bytes, other.offsets[code],
+					other.offsets[code] + other.lengths[code]);
+		}
+		return codes;
+	}
+
+	// a pool with the same texts and codes that later adds to this one do
+	// not change
+	public TextPool copy() {
+		TextPool copy = new TextPool();
+		copy.bytes = Arrays.copyOf(bytes, numBytes);
+		copy.numBytes = numBytes;
+		copy.offsets = Arrays.copyOf(offsets, offsets.length);
+		copy.lengths = Arrays.copyOf(lengths, lengths.length);
+		copy.hashes = Arrays.copyOf(hashes, hashes.length);
+		copy.size = size;
+		copy.table = Arrays.copyOf(table, table.length);
+		return copy;
+	}
+
+	// makes a String of the text with the given code
+	public String text(int code) {
+		if (code == EMPTY) {
+			return "";
+		}
+		return new String(bytes, offsets[code], lengths[code],
+				StandardCharsets.UTF_8);
+	}
+
+	// the UTF-8 bytes of a text, for writing it out without a String
+	public byte[] textBytes(int code) {
+		return Arrays.copyOfRange(bytes, offsets[code],
+				offsets[code] + lengths[code]);
+	}
+
+	// number of codes, including the one for the empty text
+	public int size() {
+		return size;
+	}
+
+	// gives the text the next code and records it in the hash table
+	private int insert(byte[] text, int start, int end, int hash) {
+		int length = end - start;
+		if (numBytes + length > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2,
+					numBytes + length));
+		}
+		if (size == offsets.length) {
+			offsets = Arrays.copyOf(offsets, size * 2);
+			lengths = Arrays.copyOf(lengths, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+		int code = size;
+		System.arraycopy(text, start, bytes, numBytes, length);
+		offsets[code] = numBytes;
+		lengths[code] = length;
+		hashes[code] = hash;
+		numBytes += length;
+		size++;
+
+		// keep the table at most half full so lookups stay short
+		if (size * 2 > table.length) {
+			table = new int[table.length * 2];
+			for (int i = 1; i < size; i++) {
+				place(i);
+			}
+		} else {
+			place(code);
+		}
+		return code;
+	}
+
+	// puts a code in the first empty slot at or after its hash
+	private void place(int code) {
+		int mask = table.length - 1;
+		int slot = hashes[code] & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = code + 1;
+	}
+}
@@ -0,0 +1,197 @@
+// TimeSeries		Author: Garrett Reihner
+//
+// The index values of one site and parameter in date order, ready to be
+// drawn as a line. A series can hold far more readings than a plot has
+// pixels, so it is downsampled to one bucket per pixel column: each bucket
+// keeps its first, lowest, highest and last value, which draws exactly the
+// same line as every reading would (the M4 method). The lowest and highest
+// value of any range of readings is found from a pyramid of block minimums
+// and maximums built once with the series, so downsampling after a zoom or
+// pan takes time in proportion to the plot width, not the number of
+// readings on screen.
+
+import java.util.Arrays;
+
+public class TimeSeries {
+	private final int[] days;		// epoch day of each reading, in order
+	private final short[] values;	// index value of each reading
+
+	// level k holds the minimum (or maximum) of each block of 2^k readings,
+	// with level 0 being the values themselves
+	private final short[][] mins;
+	private final short[][] maxs;
+
+	private TimeSeries(int[] days, short[] values) {
+		this.days = days;
+		this.values = values;
+
+		int levels = 1;
+		for (int length = values.length; length > 1; length = (length + 1) / 2) {
+			levels++;
+		}
+		mins = new short[levels][];
+		maxs = new short[levels][];
+		mins[0] = values;
+		maxs[0] = values;
+		for (int k = 1; k < levels; k++) {
+			short[] lowerMins = mins[k - 1];
+			short[] lowerMaxs = maxs[k - 1];
+			mins[k] = new short[(lowerMins.length + 1) / 2];
+			maxs[k] = new short[mins[k].length];
+			for (int i = 0; i < mins[k].length; i++) {
+				// a block at the end may only have one half
+				int second = Math.min(2 * i + 1, lowerMins.length - 1);
+				mins[k][i] = (short) Math.min(lowerMins[2 * i],
+						lowerMins[second]);
+				maxs[k][i] = (short) Math.max(lowerMaxs[2 * i],
+						lowerMaxs[second]);
+			}
+		}
+	}
+
+	// collects the readings of a site and parameter from the store and puts
+	// them in date order
+	public static TimeSeries of(ReadingStore store, int siteCode,
+			int parameterCode) {
+		// the day goes in the high half so sorting the packed readings sorts
+		// them by day. the value is biased by 0x8000 so that within a day
+		// negative values still sort before positive ones
+		long[] packed = new long[16];
+		int size = 0;
+		for (int row = 0; row < store.size(); row++) {
+			if (store.getSiteCode(row) == siteCode
+					&& store.getParameterCode(row) == parameterCode) {
+				if (size == packed.length) {
+					packed = Arrays.copyOf(packed, size * 2);
+				}
+				packed[size++] = ((long) store.getDay(row) << 32)
+						| (store.getIndexValue(row) + 0x8000);
+			}
+		}
+		Arrays.sort(packed, 0, size);
+
+		int[] days = new int[size];
+		short[] values = new short[size];
+		for (int i = 0; i < size; i++) {
+			days[i] = (int) (packed[i] >> 32);
+			values[i] = (short) ((packed[i] & 0xffff) - 0x8000);
+		}
+		return new TimeSeries(days, values);
+	}
+
+	public int size() {
+		return days.length;
+	}
+
+	public int getFirstDay() {
+		return days[0];
+	}
+
+	public int getLastDay() {
+		return days[days.length - 1];
+	}
+
+	// the highest index value in the whole series
+	public int getMaxValue() {
+		return days.length == 0 ? 0 : maxs[maxs.length - 1][0];
+	}
+
+	// downsamples the readings from fromDay up to toDay into width pixel
+	// columns. for each column with readings in it, up to four points are
+	// stored in xs (the column) and ys (the index value): the first, lowest,
+	// highest and last reading, with the lowest and highest in the order
+	// that suits the line. xs and ys need room for 4 * width points.
+	// returns the number of points stored
+	public int downsample(double fromDay, double toDay, int width,
+			double[] xs, double[] ys) {
+		int points = 0;
+		double daysPerColumn = (toDay - fromDay) / width;
+		int start = firstAtOrAfter(fromDay);
+		for (int column = 0; column < width && start < days.length; column++) {
+			double columnEnd = fromDay + daysPerColumn * (column + 1);
+			int end = column == width - 1 ? firstAfter(toDay)
+					: firstAtOrAfter(columnEnd);
+			if (end <= start) {
+				continue;
+			}
+			int first = values[start];
+			int last = values[end - 1];
+			int low = min(start, end);
+			int high = max(start, end);
+
+			xs[points] = column;
+			ys[points++] = first;
+			// falling columns reach their highest point before their lowest
+			xs[points] = column;
+			ys[points++] = first > last ? high : low;
+			xs[points] = column;
+			ys[points++] = first > last ? low : high;
+			xs[points] = column;
+			ys[points++] = last;
+			start = end;
+		}
+		return points;
+	}
+
+	// lowest value of the readings from start up to (not including) end,
+	// taking whole blocks from the highest level they fit in
+	private int min(int start, int end) {
+		int result = Integer.MAX_VALUE;
+		for (int k = 0; start < end; k++) {
+			if ((start & 1) == 1) {
+				result = Math.min(result, mins[k][start++]);
+			}
+			if ((end & 1) == 1) {
+				result = Math.min(result, mins[k][--end]);
+			}
+			start >>= 1;
+			end >>= 1;
+		}
+		return result;
+	}
+
+	private int max(int start, int end) {
+		int result = Integer.MIN_VALUE;
+		for (int k = 0; start < end; k++) {
+			if ((start & 1) == 1) {
+				result = Math.max(result, maxs[k][start++]);
+			}
+			if ((end & 1) == 1) {
+				result = Math.max(result, maxs[k][--end]);
+			}
+			start >>= 1;
+			end >>= 1;
+		}
+		return result;
+	}
+
+	// index of the first reading on or after a day
+	private int firstAtOrAfter(double day) {
+		int low = 0;
+		int high = days.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (days[middle] < day) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	// index of the first reading after a day
+	private int firstAfter(double day) {
+		int low = 0;
+		int high = days.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (days[middle] <= day) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,150 @@
+// TimeSeriesView		Author: Garrett Reihner
+//
+// Draws the index value of one site and parameter over time on a Canvas.
+// The series is downsampled to the width of the plot every time it is
+// drawn, so no more than four points per pixel column are ever drawn no
+// matter how many readings are on screen. Scrolling zooms in and out around
+// the mouse and dragging pans. Like the grid of charts, a redraw is put off
+// to the next frame so a burst of scroll or drag events only costs one.
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+import java.time.LocalDate;
+
+public class TimeSeriesView {
+	private static final double TOP = 18;		// room for the title
+	private static final double BOTTOM = 18;	// room for the dates
+	private static final double MIN_DAYS = 7;	// closest zoom
+	private static final double ZOOM_STEP = 1.002;	// zoom per scroll unit
+
+	private final Canvas canvas;
+	private final GraphicsContext graphics;
+
+	private TimeSeries series;	// null until a series is chosen
+	private String title = "";
+	private double fromDay;		// first day on screen
+	private double toDay;		// last day on screen
+	private double dragX;		// where the last drag event was
+
+	// points of the downsampled line, reused between draws
+	private double[] xs = new double[0];
+	private double[] ys = new double[0];
+
+	// draws at most once per frame, then stops
+	private final AnimationTimer frames = new AnimationTimer() {
+		public void handle(long now) {
+			draw();
+			stop();
+		}
+	};
+
+	public TimeSeriesView(double width, double height) {
+		canvas = new Canvas(width, height);
+		graphics = canvas.getGraphicsContext2D();
+		canvas.setOnScroll(this::scrolled);
+		canvas.setOnMousePressed(event -> dragX = event.getX());
+		canvas.setOnMouseDragged(this::dragged);
+	}
+
+	// the node to add to the scene
+	public Canvas getCanvas() {
+		return canvas;
+	}
+
+	public void setSize(double width, double height) {
+		canvas.setWidth(width);
+		canvas.setHeight(height);
+		frames.start();
+	}
+
+	// shows a new series, zoomed out to all of it
+	public void setSeries(TimeSeries timeSeries, String seriesTitle) {
+		series = timeSeries;
+		title = seriesTitle;
+		if (series.size() > 0) {
+			fromDay = series.getFirstDay();
+			toDay = Math.max(series.getLastDay(), fromDay + MIN_DAYS);
+		}
+		frames.start();
+	}
+
+	// zooms around the day under the mouse, keeping it in the same place
+	private void scrolled(ScrollEvent event) {
+		if (series == null || series.size() == 0) {
+			return;
+		}
+		double span = toDay - fromDay;
+		double fullSpan = Math.max(series.getLastDay() - series.getFirstDay(),
+				MIN_DAYS);
+		double newSpan = Math.max(MIN_DAYS, Math.min(fullSpan,
+				span * Math.pow(ZOOM_STEP, -event.getDeltaY())));
+		double fraction = Math.max(0, Math.min(1, event.getX()
+				/ canvas.getWidth()));
+		double pivot = fromDay + span * fraction;
+		fromDay = pivot - newSpan * fraction;
+		toDay = fromDay + newSpan;
+		frames.start();
+	}
+
+	// moves the days on screen along with the mouse
+	private void dragged(MouseEvent event) {
+		if (series == null || series.size() == 0) {
+			return;
+		}
+		double shift = (dragX - event.getX()) / canvas.getWidth()
+				* (toDay - fromDay);
+		fromDay += shift;
+		toDay += shift;
+		dragX = event.getX();
+		frames.start();
+	}
+
+	private void draw() {
+		double width = canvas.getWidth();
+		double height = canvas.getHeight();
+		double plotHeight = height - TOP - BOTTOM;
+		graphics.clearRect(0, 0, width, height);
+		graphics.setFont(Font.font(11));
+		graphics.setTextBaseline(VPos.TOP);
+		graphics.setStroke(Color.LIGHTGRAY);
+		graphics.strokeRect(0, TOP, width, plotHeight);
+		graphics.setFill(Color.BLACK);
+		graphics.fillText(title, 2, 2);
+		if (series == null || series.size() == 0) {
+			graphics.fillText("No readings", 4, TOP + 4);
+			return;
+		}
+
+		// the line is scaled to the highest value in the whole series so the
+		// height of a value does not change while zooming and panning
+		int maxValue = Math.max(1, series.getMaxValue());
+		int columns = (int) width;
+		if (xs.length < columns * 4) {
+			xs = new double[columns * 4];
+			ys = new double[columns * 4];
+		}
+		int points = series.downsample(fromDay, toDay, columns, xs, ys);
+		for (int i = 0; i < points; i++) {
+			xs[i] = xs[i] + 0.5;
+			ys[i] = TOP + plotHeight - ys[i] / maxValue * plotHeight;
+		}
+		graphics.setStroke(Color.STEELBLUE);
+		graphics.strokePolyline(xs, ys, points);
+
+		graphics.setFill(Color.DARKGRAY);
+		graphics.fillText(Integer.toString(maxValue), 4, TOP + 2);
+		graphics.fillText(LocalDate.ofEpochDay((long) fromDay).toString(), 2,
+				height - BOTTOM + 3);
+		graphics.setTextAlign(TextAlignment.RIGHT);
+		graphics.fillText(LocalDate.ofEpochDay((long) toDay).toString(),
+				width - 2, height - BOTTOM + 3);
+		graphics.setTextAlign(TextAlignment.LEFT);
+	}
+}
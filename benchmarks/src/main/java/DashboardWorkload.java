@@ -0,0 +1,150 @@
+// DashboardWorkload		Author: Garrett Reihner
+//
+// Runs the benchmarked operations on the dashboard's own classes. It has to
+// be in the default package to use them, see benchmarks.Workload.
+
+import benchmarks.Workload;
+import java.io.*;
+
+public class DashboardWorkload implements Workload {
+	private ReadingStore store;
+	private int minYear;
+	private int maxYear;
+	private int maxIndexValue;
+	private CountCube cube;
+	private BitmapIndex index;
+	private DateIndex dateIndex;
+	private DatasetSnapshot snapshot;	// newest one made by appendSnapshot
+	private AirDataLoader appended;	// lines that appendSnapshot adds
+
+	public int load(String filename, int parallelism) throws IOException {
+		AirDataLoader loader = new AirDataLoader();
+		loader.loadParallel(filename, parallelism);
+		return loader.getNumReadings();
+	}
+
+	public int loadSnapshot(String filename) throws IOException {
+		AirDataLoader loader = new AirDataLoader();
+		loader.loadWithSnapshot(filename, 1);
+		return loader.getNumReadings();
+	}
+
+	public void prepare(String filename) throws IOException {
+		AirDataLoader loader = new AirDataLoader();
+		loader.load(filename);
+		store = loader.getStore();
+		minYear = loader.getMinYear();
+		maxYear = loader.getMaxYear();
+		for (int row = 0; row < store.size(); row++) {
+			maxIndexValue = Math.max(maxIndexValue, store.getIndexValue(row));
+		}
+		cube = new CountCube(store, minYear, maxYear);
+		index = new BitmapIndex(store, minYear, maxYear);
+		dateIndex = new DateIndex(store);
+	}
+
+	public void generate(String filename, long rows, int sites, 
+			int parameters, String years) throws IOException {
+		DataGenerator.main(new String[] {"--rows=" + rows, 
+				"--sites=" + sites, "--parameters=" + parameters, 
+				"--years=" + years, filename});
+	}
+
+	public void prepareAppend(String filename, int lines) 
+			throws IOException {
+		snapshot = DatasetSnapshot.open(filename, 1, true, null);
+		// the offset where the last lines of the file start
+		long offset;
+		try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+			offset = file.length() - 1;
+			for (int found = 0; offset > 0; offset--) {
+				file.seek(offset - 1);
+				if (file.read() == '\n' && ++found == lines) {
+					break;
+				}
+			}
+		}
+		appended = AirDataLoader.readAppended(filename, offset);
+	}
+
+	public Object appendSnapshot() {
+		snapshot = snapshot.withAppended(appended);
+		return snapshot;
+	}
+
+	public int numReadings() {
+		return store.size();
+	}
+
+	public int numParameters() {
+		return store.getParameters().size();
+	}
+
+	public String[] sites() {
+		return store.getSites().names();
+	}
+
+	public int minYear() {
+		return minYear;
+	}
+
+	public int maxYear() {
+		return maxYear;
+	}
+
+	public Object buildCube() {
+		return new CountCube(store, minYear, maxYear);
+	}
+
+	public Object buildBitmapIndex() {
+		return new BitmapIndex(store, minYear, maxYear);
+	}
+
+	public Object buildDateIndex() {
+		return new DateIndex(store);
+	}
+
+	public Object reading(int row) {
+		return store.getReading(row);
+	}
+
+	// the names are turned into codes the same way as countReadings in
+	// AirQualityGDR, so that is part of what is timed
+	public int[] countReadings(String description, String site, int year) {
+		return cube.countByParameter(descriptionCode(description), 
+				siteCode(site), year);
+	}
+
+	public int[] countReadingsBitmap(String description, String site, 
+			int year) {
+		return index.countByParameter(descriptionCode(description), 
+				siteCode(site), year);
+	}
+
+	public int[] countReadingsDays(String description, String site, 
+			int fromDay, int toDay) {
+		return dateIndex.countByParameter(descriptionCode(description), 
+				siteCode(site), DateRange.of(fromDay, toDay));
+	}
+
+	public Object aggregate(String description, String site, int year) {
+		return new Aggregation(store, index, minYear, maxYear, maxIndexValue,
+				Aggregation.PARAMETER, descriptionCode(description), 
+				siteCode(site), year);
+	}
+
+	public int countClicked(int parameter, String description, String site,
+			int year) {
+		return cube.count(parameter, descriptionCode(description), 
+				siteCode(site), year);
+	}
+
+	private int descriptionCode(String description) {
+		return description.equals("All") ? CountCube.ALL 
+				: store.descriptionCode(description);
+	}
+
+	private int siteCode(String site) {
+		return site == null ? CountCube.ALL : store.siteCode(site);
+	}
+}
@@ -0,0 +1,62 @@
+// AppendBenchmark		Author: Garrett Reihner
+//
+// Time taken to make a new dataset snapshot when lines are appended to a
+// file being followed, which happens on every check of the file. It should
+// depend on the number of new lines, not on the size of the data or of its
+// count table, so it is run on a generated file with the usual sites,
+// parameters and years, and on one with hundreds of sites, dozens of
+// parameters and decades of years, whose count table is much bigger. Every
+// iteration starts again from a freshly opened snapshot so the store does
+// not keep growing.
+
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppendBenchmark {
+	@Param({"Narrow", "Wide"})
+	public String shape;
+
+	// lines appended between two checks of the file
+	@Param({"1", "100"})
+	public int lines;
+
+	private Workload workload;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, ReflectiveOperationException {
+		workload = Workload.create();
+		file = File.createTempFile("airQuality" + shape, ".txt");
+		if (shape.equals("Wide")) {
+			workload.generate(file.getPath(), 200000, 400, 40, "1985-2024");
+		} else {
+			workload.generate(file.getPath(), 200000, 15, 14, "2016-2024");
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void open() throws IOException {
+		workload.prepareAppend(file.getPath(), lines);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+		new File(file.getPath() + ".snapshot").delete();
+	}
+
+	@Benchmark
+	public Object appendSnapshot() {
+		return workload.appendSnapshot();
+	}
+}
@@ -0,0 +1,26 @@
+// Datasets		Author: Garrett Reihner
+//
+// Finds the data files that the benchmarks run on. They are read from the
+// directory given by -Ddata.dir, or the current directory if it is not set,
+// so the benchmarks are normally run from the top of the repository.
+
+package benchmarks;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+public class Datasets {
+	private Datasets() {}
+
+	// the file for one of Small, Moderate, Large or VeryLarge
+	public static String file(String dataset) throws FileNotFoundException {
+		File file = new File(System.getProperty("data.dir", "."), 
+				"airQuality" + dataset + ".txt");
+		if (!file.isFile()) {
+			throw new FileNotFoundException(file.getAbsolutePath() 
+					+ " (run from the directory with the data files or set"
+					+ " -Ddata.dir)");
+		}
+		return file.getPath();
+	}
+}
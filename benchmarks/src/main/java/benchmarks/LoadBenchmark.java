@@ -0,0 +1,49 @@
+// LoadBenchmark		Author: Garrett Reihner
+//
+// Time taken to read each data file into a store: parsing it on one
+// thread, parsing it with a thread per core, and reading it back from its
+// snapshot.
+
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+	@Param({"Small", "Moderate", "Large", "VeryLarge"})
+	public String dataset;
+
+	private String filename;
+	private Workload workload;
+
+	@Setup
+	public void setUp() throws IOException, ReflectiveOperationException {
+		filename = Datasets.file(dataset);
+		workload = Workload.create();
+		// make sure the snapshot exists so loadSnapshot only times reading it
+		workload.loadSnapshot(filename);
+	}
+
+	@Benchmark
+	public int load() throws IOException {
+		return workload.load(filename, 1);
+	}
+
+	@Benchmark
+	public int loadParallel() throws IOException {
+		return workload.load(filename, 
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	@Benchmark
+	public int loadSnapshot() throws IOException {
+		return workload.loadSnapshot(filename);
+	}
+}
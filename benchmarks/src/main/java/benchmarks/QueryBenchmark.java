@@ -0,0 +1,131 @@
+// QueryBenchmark		Author: Garrett Reihner
+//
+// Throughput of the work done after a data file has loaded: building the
+// count table, bitmap indexes and date index, counting the bars for the
+// description, site and year filters and for 90 day windows, aggregating the index values of each parameter,
+// counting the readings behind a clicked bar, and turning a row back into
+// a ReadingGDR. Each call moves on to the next
+// description, site, year, parameter or row so the results are not all
+// for one easy case.
+
+package benchmarks;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+	private static final String[] DESCRIPTIONS = {"All", "Good", "Moderate",
+			"Unhealthy"};
+
+	@Param({"Small", "Moderate", "Large", "VeryLarge"})
+	public String dataset;
+
+	private Workload workload;
+	private String[] sites;
+	private int numYears;
+	private int numParameters;
+	private int numReadings;
+	private int firstDay;	// January 1 of the earliest year
+	private int numDays;	// days from firstDay to the end of the last year
+	private int step;	// counts calls to pick the next filter values
+
+	@Setup
+	public void setUp() throws IOException, ReflectiveOperationException {
+		workload = Workload.create();
+		workload.prepare(Datasets.file(dataset));
+		sites = workload.sites();
+		numYears = workload.maxYear() - workload.minYear() + 1;
+		numParameters = workload.numParameters();
+		numReadings = workload.numReadings();
+		firstDay = (int) LocalDate.of(workload.minYear(), 1, 1).toEpochDay();
+		numDays = (int) LocalDate.of(workload.maxYear() + 1, 1, 1)
+				.toEpochDay() - firstDay;
+	}
+
+	@Benchmark
+	public Object buildCube() {
+		return workload.buildCube();
+	}
+
+	@Benchmark
+	public Object buildBitmapIndex() {
+		return workload.buildBitmapIndex();
+	}
+
+	@Benchmark
+	public Object buildDateIndex() {
+		return workload.buildDateIndex();
+	}
+
+	@Benchmark
+	public int[] countByDescription() {
+		return workload.countReadings(description(), null, Workload.ALL);
+	}
+
+	@Benchmark
+	public int[] countBySite() {
+		step++;
+		return workload.countReadings(description(), 
+				sites[step % sites.length], Workload.ALL);
+	}
+
+	@Benchmark
+	public int[] countByYear() {
+		step++;
+		return workload.countReadings(description(), null, 
+				workload.minYear() + step % numYears);
+	}
+
+	@Benchmark
+	public int[] countDateWindow() {
+		step++;
+		int from = firstDay + step * 37 % numDays;
+		return workload.countReadingsDays(description(), null, from, 
+				from + 89);
+	}
+
+	@Benchmark
+	public int[] countDateWindowBySite() {
+		step++;
+		int from = firstDay + step * 37 % numDays;
+		return workload.countReadingsDays(description(), 
+				sites[step % sites.length], from, from + 89);
+	}
+
+	@Benchmark
+	public int[] countBySiteBitmap() {
+		step++;
+		return workload.countReadingsBitmap(description(), 
+				sites[step % sites.length], Workload.ALL);
+	}
+
+	@Benchmark
+	public Object aggregateBySite() {
+		step++;
+		return workload.aggregate(description(), sites[step % sites.length],
+				Workload.ALL);
+	}
+
+	@Benchmark
+	public int countClicked() {
+		step++;
+		return workload.countClicked(step % numParameters, description(),
+				sites[step % sites.length], Workload.ALL);
+	}
+
+	@Benchmark
+	public Object reading() {
+		step++;
+		return workload.reading(step % numReadings);
+	}
+
+	private String description() {
+		return DESCRIPTIONS[step++ & 3];
+	}
+}
@@ -0,0 +1,23 @@
+// RunBenchmarks		Author: Garrett Reihner
+//
+// Main class of benchmarks.jar. It runs JMH with the usual command line
+// options, and always adds the GC profiler so every benchmark also reports
+// its allocation rate and the bytes allocated per operation.
+
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class RunBenchmarks {
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
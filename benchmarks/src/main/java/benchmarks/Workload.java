@@ -0,0 +1,89 @@
+// Workload		Author: Garrett Reihner
+//
+// The operations of the dashboard that are benchmarked. JMH will not run a
+// benchmark class that is in the default package, and code in a package
+// cannot name the dashboard's classes since they are all in the default
+// package, so the benchmarks call them through this interface instead. It
+// is implemented by DashboardWorkload, which is looked up by name once when
+// a benchmark is set up, so the calls being timed are ordinary interface
+// calls.
+
+package benchmarks;
+
+import java.io.IOException;
+
+public interface Workload {
+	// pass ALL in place of a year to leave the year filter off
+	int ALL = Integer.MIN_VALUE;
+
+	// parses the whole file with the given number of threads and returns
+	// the number of readings
+	int load(String filename, int parallelism) throws IOException;
+
+	// loads the file from its snapshot (writing the snapshot first if it is
+	// missing) and returns the number of readings
+	int loadSnapshot(String filename) throws IOException;
+
+	// loads the file and builds its count table, which the methods below use
+	void prepare(String filename) throws IOException;
+
+	int numReadings();
+
+	int numParameters();
+
+	String[] sites();
+
+	int minYear();
+
+	int maxYear();
+
+	// builds the count table for every filter from the loaded readings
+	Object buildCube();
+
+	// builds the bitmap indexes from the loaded readings
+	Object buildBitmapIndex();
+
+	// builds the index of the loaded readings by day
+	Object buildDateIndex();
+
+	// the reading in the given row as a ReadingGDR
+	Object reading(int row);
+
+	// readings of each parameter matching the filters, as the bars show
+	// them. "All" as the description and null as the site leave those off
+	int[] countReadings(String description, String site, int year);
+
+	// the same counts worked out from the bitmap indexes
+	int[] countReadingsBitmap(String description, String site, int year);
+
+	// readings of each parameter matching the filters from fromDay to toDay
+	// (days since 1/1/1970, both included), answered from the date index
+	int[] countReadingsDays(String description, String site, int fromDay,
+			int toDay);
+
+	// count, sum, min, max and histogram of the index values of each
+	// parameter matching the filters, as the bars show the other metrics
+	Object aggregate(String description, String site, int year);
+
+	// readings of one parameter matching the filters, as shown when its bar
+	// is clicked
+	int countClicked(int parameter, String description, String site, int year);
+
+	// writes a synthetic data file with DataGenerator
+	void generate(String filename, long rows, int sites, int parameters,
+			String years) throws IOException;
+
+	// opens the file as a dataset snapshot and reads its last lines again
+	// as if they had just been appended, for appendSnapshot
+	void prepareAppend(String filename, int lines) throws IOException;
+
+	// makes the next snapshot from the newest one with the lines read by
+	// prepareAppend appended, as following the file does, and returns it
+	Object appendSnapshot();
+
+	// the implementation in the default package
+	static Workload create() throws ReflectiveOperationException {
+		return (Workload) Class.forName("DashboardWorkload")
+				.getDeclaredConstructor().newInstance();
+	}
+}